@@ -0,0 +1,142 @@
+package com.squabbles.logic;
+
+import com.squabbles.model.Card;
+import com.squabbles.model.Icon;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The card-to-icons table produced by DeckGenerator, built once per JVM.
+ * The cards are immutable, so every GameRoom deals from this one list.
+ * Server and client both derive it from the same generator, so a card ID is
+ * enough to know its icons; the hash lets the two sides confirm they agree
+ * before the server stops sending icon lists.
+ * Decks are built once per order and cached; -Dsquabbles.deck.order picks
+ * the order get() returns (7 unless a larger variant is configured).
+ */
+public final class CanonicalDeck {
+    private static final int ORDER = Integer.getInteger("squabbles.deck.order", DeckGenerator.DEFAULT_ORDER);
+    private static final ConcurrentHashMap<Integer, CanonicalDeck> BY_ORDER = new ConcurrentHashMap<>();
+
+    private final int order;
+    private final int iconCount;
+    private final List<Card> cards;
+    private final int[][] iconsById; // index = card ID
+    // Icon shared by cards a and b at [a * stride + b]; -1 where a == b or an ID is unused
+    private final short[] sharedIcons;
+    private final int stride;
+    private final String hash;
+
+    private CanonicalDeck(int order, List<Card> cards) {
+        this.order = order;
+        this.iconCount = order * order + order + 1;
+        this.cards = Collections.unmodifiableList(cards);
+        int maxId = 0;
+        for (Card card : cards) {
+            maxId = Math.max(maxId, card.getId());
+        }
+        iconsById = new int[maxId + 1][];
+
+        // FNV-1a over card IDs and their icon IDs in generation order
+        int h = 0x811c9dc5;
+        for (Card card : cards) {
+            List<Icon> icons = card.getIcons();
+            int[] ids = new int[icons.size()];
+            h = (h ^ card.getId()) * 0x01000193;
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = icons.get(i).getId();
+                h = (h ^ ids[i]) * 0x01000193;
+            }
+            iconsById[card.getId()] = ids;
+        }
+        hash = Integer.toHexString(h);
+
+        // Every pair of cards shares exactly one icon, so the answer to any match fits in a table
+        stride = maxId + 1;
+        sharedIcons = new short[stride * stride];
+        Arrays.fill(sharedIcons, (short) -1);
+        for (int i = 0; i < cards.size(); i++) {
+            Card a = cards.get(i);
+            for (int j = i + 1; j < cards.size(); j++) {
+                Card b = cards.get(j);
+                short icon = (short) a.commonIcon(b);
+                sharedIcons[a.getId() * stride + b.getId()] = icon;
+                sharedIcons[b.getId() * stride + a.getId()] = icon;
+            }
+        }
+    }
+
+    public static CanonicalDeck get() {
+        return forOrder(ORDER);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the order is not prime
+     */
+    public static CanonicalDeck forOrder(int order) {
+        CanonicalDeck deck = BY_ORDER.get(order);
+        if (deck == null) {
+            deck = BY_ORDER.computeIfAbsent(order, o -> new CanonicalDeck(o, new DeckGenerator(o).generateDeck()));
+        }
+        return deck;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Icon IDs run from 1 to this count.
+     */
+    public int getIconCount() {
+        return iconCount;
+    }
+
+    public List<Card> getCards() {
+        return cards;
+    }
+
+    public boolean contains(int cardId) {
+        return cardId > 0 && cardId < iconsById.length && iconsById[cardId] != null;
+    }
+
+    /**
+     * @return a fresh copy of the card's icon IDs in canonical order
+     */
+    public int[] iconIds(int cardId) {
+        return iconsById[cardId].clone();
+    }
+
+    /**
+     * Icon IDs of a card in the display order chosen by the server's seed.
+     */
+    public int[] shuffledIconIds(int cardId, Random random) {
+        int[] ids = iconIds(cardId);
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+        return ids;
+    }
+
+    /**
+     * The one icon two different cards have in common, in a single array read.
+     *
+     * @return the icon ID, or -1 for the same card twice or IDs not in this deck
+     */
+    public int sharedIcon(int cardA, int cardB) {
+        if (cardA < 0 || cardB < 0 || cardA >= stride || cardB >= stride)
+            return -1;
+        return sharedIcons[cardA * stride + cardB];
+    }
+
+    public String getHash() {
+        return hash;
+    }
+}
@@ -7,17 +7,56 @@ import com.squabbles.model.StandardCard;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Builds the finite projective plane of prime order P: P*P+P+1 cards and as
+ * many icons, P+1 icons per card, and every two cards share exactly one icon.
+ * The classic game is order 7 (57 cards, 8 icons each).
+ */
 public class DeckGenerator {
-    private static final int P = 7;
+    public static final int DEFAULT_ORDER = 7;
 
-    // Icon index layout for P = 7:
+    // Plane order; upper case to match the formulas below
+    private final int P;
+
+    // Icon index layout (values for P = 7):
     // Points: 1 .. P*P   (1-49)
     // Slopes: P*P+1 .. P*P+P (50-56)
     // Vertical: P*P+P+1 (57)
 
+    public DeckGenerator() {
+        this(DEFAULT_ORDER);
+    }
+
+    public DeckGenerator(int order) {
+        // The line construction below only yields a valid plane over a prime field
+        if (!isPrime(order))
+            throw new IllegalArgumentException("Deck order must be prime: " + order);
+        this.P = order;
+    }
+
+    public int getOrder() {
+        return P;
+    }
+
+    public int getCardCount() {
+        return P * P + P + 1;
+    }
+
+    public static boolean isPrime(int n) {
+        if (n < 2)
+            return false;
+        for (int d = 2; d * d <= n; d++) {
+            if (n % d == 0)
+                return false;
+        }
+        return true;
+    }
+
     public List<Card> generateDeck() {
         List<Card> deck = new ArrayList<>();
         int cardIdCounter = 1;
+        // One Icon object per icon ID, shared by every card that shows it
+        Icon[] icons = new Icon[P * P + P + 2];
 
         // Family A: Slope-Intercept Lines (y = mx + b)
         // m in [0, P-1]
@@ -29,14 +68,13 @@ public class DeckGenerator {
                 // Ensure we use the same slope IDs as in the special card (Family C):
                 // P*P+1 .. P*P+P (50-56)
                 int slopeIconId = P * P + 1 + m;
-                cardIcons.add(new Icon(slopeIconId, "SLOPE", "m=" + m));
+                cardIcons.add(icon(icons, slopeIconId, "SLOPE", m));
 
                 // 2. Point Icons
                 // y = mx + b (mod P)
                 for (int x = 0; x < P; x++) {
                     int y = (m * x + b) % P;
-                    int pointIconId = getPointIconId(x, y);
-                    cardIcons.add(new Icon(pointIconId, "POINT", "(" + x + "," + y + ")"));
+                    cardIcons.add(point(icons, x, y));
                 }
 
                 deck.add(new StandardCard(cardIdCounter++, cardIcons));
@@ -44,25 +82,20 @@ public class DeckGenerator {
         }
 
         // Family B: Vertical Lines (x = k)
-        // k in [0, 4]
+        // k in [0, P-1]
         for (int k = 0; k < P; k++) {
             List<Icon> cardIcons = new ArrayList<>();
 
             // 1. Vertical Icon
-            // Index 31
-            // Indices:
-            // Points: 1 to P*P (1-49)
-            // Slopes: P*P+1 to P*P+P (50-56)
-            // Vertical: P*P+P+1 (57)
+            // Index P*P+P+1 (57 for P = 7)
 
             int verticalIconIdVal = P * P + P + 1;
-            cardIcons.add(new Icon(verticalIconIdVal, "VERTICAL", "inf slope"));
+            cardIcons.add(icon(icons, verticalIconIdVal, "VERTICAL", 0));
 
             // 2. Point Icons
             // x = k, iterate y
             for (int y = 0; y < P; y++) {
-                int pointIconId = getPointIconId(k, y);
-                cardIcons.add(new Icon(pointIconId, "POINT", "(" + k + "," + y + ")"));
+                cardIcons.add(point(icons, k, y));
             }
 
             deck.add(new StandardCard(cardIdCounter++, cardIcons));
@@ -72,16 +105,30 @@ public class DeckGenerator {
         List<Icon> specialCardIcons = new ArrayList<>();
         // P Slope Icons
         for (int m = 0; m < P; m++) {
-            specialCardIcons.add(new Icon(P * P + 1 + m, "SLOPE", "m=" + m));
+            specialCardIcons.add(icon(icons, P * P + 1 + m, "SLOPE", m));
         }
         // 1 Vertical Icon
-        specialCardIcons.add(new Icon(P * P + P + 1, "VERTICAL", "inf slope"));
+        specialCardIcons.add(icon(icons, P * P + P + 1, "VERTICAL", 0));
 
         deck.add(new StandardCard(cardIdCounter++, specialCardIcons));
 
         return deck;
     }
 
+    private Icon point(Icon[] icons, int x, int y) {
+        int id = getPointIconId(x, y);
+        if (icons[id] == null)
+            icons[id] = new Icon(id, "POINT", "(" + x + "," + y + ")");
+        return icons[id];
+    }
+
+    // Slope and vertical icons; the description is only built the first time
+    private Icon icon(Icon[] icons, int id, String type, int slope) {
+        if (icons[id] == null)
+            icons[id] = new Icon(id, type, "SLOPE".equals(type) ? "m=" + slope : "inf slope");
+        return icons[id];
+    }
+
     private int getPointIconId(int x, int y) {
         // Formula: (P * x) + y + 1
         return (P * x) + y + 1;
@@ -0,0 +1,104 @@
+package com.squabbles.logic;
+
+import com.squabbles.model.Card;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks that a generated deck really is a projective plane: every card has
+ * order+1 icons and every two cards share exactly one. Pairs are compared with
+ * bitset intersections and split across the fork-join pool by card rows.
+ */
+public class DeckVerifier {
+    // Orders the game ships; the server verifies all of them when it starts
+    public static final int[] SHIPPED_ORDERS = { 2, 3, 5, 7, 11, 13 };
+
+    // Rows per leaf task; row i compares card i with every later card
+    private static final int ROWS_PER_TASK = 8;
+
+    private DeckVerifier() {
+    }
+
+    /**
+     * @return a problem description, or null if the deck is valid
+     */
+    public static String verify(CanonicalDeck deck) {
+        List<Card> cards = deck.getCards();
+        int expectedCards = deck.getIconCount();
+        if (cards.size() != expectedCards)
+            return "expected " + expectedCards + " cards, got " + cards.size();
+        for (Card card : cards) {
+            if (card.getIcons().size() != deck.getOrder() + 1)
+                return "card " + card.getId() + " has " + card.getIcons().size() + " icons";
+        }
+        long badPairs = ForkJoinPool.commonPool().invoke(new PairTask(cards, 0, cards.size()));
+        return badPairs == 0 ? null : badPairs + " card pairs don't share exactly one icon";
+    }
+
+    /**
+     * Verifies every shipped order, plus the configured one, and logs how long each took.
+     *
+     * @return false if any deck is broken
+     */
+    public static boolean verifyShipped() {
+        boolean ok = true;
+        int configured = CanonicalDeck.get().getOrder();
+        int[] orders = SHIPPED_ORDERS;
+        if (Arrays.stream(orders).noneMatch(o -> o == configured)) {
+            orders = Arrays.copyOf(orders, orders.length + 1);
+            orders[orders.length - 1] = configured;
+        }
+        for (int order : orders) {
+            CanonicalDeck deck = CanonicalDeck.forOrder(order);
+            long start = System.nanoTime();
+            String problem = verify(deck);
+            double ms = (System.nanoTime() - start) / 1_000_000.0;
+            long pairs = (long) deck.getCards().size() * (deck.getCards().size() - 1) / 2;
+            if (problem == null) {
+                System.out.printf("Deck order %d: %d cards, %d pairs verified in %.2f ms%n",
+                        order, deck.getCards().size(), pairs, ms);
+            } else {
+                System.out.println("Deck order " + order + " is INVALID: " + problem);
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    // ForkJoinTask is Serializable, but these tasks never leave the pool
+    @SuppressWarnings("serial")
+    private static final class PairTask extends RecursiveTask<Long> {
+        private final List<Card> cards;
+        private final int from;
+        private final int to;
+
+        PairTask(List<Card> cards, int from, int to) {
+            this.cards = cards;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                long bad = 0;
+                for (int i = from; i < to; i++) {
+                    Card a = cards.get(i);
+                    for (int j = i + 1; j < cards.size(); j++) {
+                        if (a.sharedIconCount(cards.get(j)) != 1)
+                            bad++;
+                    }
+                }
+                return bad;
+            }
+            int mid = (from + to) >>> 1;
+            PairTask left = new PairTask(cards, from, mid);
+            left.fork();
+            long right = new PairTask(cards, mid, to).compute();
+            return right + left.join();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.squabbles.logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Every player's score kept in rank order, so "top N" and "what rank am I"
+ * never need a scan or a sort. Players sit in a treap ordered by score
+ * (highest first, then name) where each node knows the size of its subtree:
+ * a result moves one player in O(log n), and a rank is the number of players
+ * with a higher score, also counted in O(log n). Players on equal scores share
+ * a rank.
+ */
+public class Leaderboard {
+    // score = WIN_POINTS * wins - LOSS_POINTS * losses; also stored in the players table
+    public static final int WIN_POINTS = 3;
+    public static final int LOSS_POINTS = 1;
+
+    public static int score(int wins, int losses) {
+        return WIN_POINTS * wins - LOSS_POINTS * losses;
+    }
+
+    /**
+     * A player's standing at the time it was read.
+     */
+    public static final class Entry {
+        public final int rank;
+        public final String name;
+        public final int score;
+        public final int wins;
+        public final int losses;
+
+        Entry(int rank, Node node) {
+            this.rank = rank;
+            this.name = node.name;
+            this.score = node.score;
+            this.wins = node.wins;
+            this.losses = node.losses;
+        }
+    }
+
+    private static final class Node {
+        final String name;
+        final int wins;
+        final int losses;
+        final int score;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(String name, int wins, int losses) {
+            this.name = name;
+            this.wins = wins;
+            this.losses = losses;
+            this.score = score(wins, losses);
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Node> byName = new HashMap<>();
+    private Node root;
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets a player's totals, e.g. when loading from the database.
+     */
+    public void put(String name, int wins, int losses) {
+        lock.writeLock().lock();
+        try {
+            Node old = byName.get(name);
+            if (old != null)
+                root = remove(root, old);
+            Node node = new Node(name, wins, losses);
+            byName.put(name, node);
+            root = insert(root, node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds results to a player's totals, adding the player if they are new.
+     */
+    public void add(String name, int wins, int losses) {
+        lock.writeLock().lock();
+        try {
+            Node old = byName.get(name);
+            Node node = old == null ? new Node(name, wins, losses)
+                    : new Node(name, old.wins + wins, old.losses + losses);
+            if (old != null)
+                root = remove(root, old);
+            byName.put(name, node);
+            root = insert(root, node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the player's standing, or null if they have no results
+     */
+    public Entry get(String name) {
+        lock.readLock().lock();
+        try {
+            Node node = byName.get(name);
+            return node == null ? null : new Entry(countAbove(node.score) + 1, node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The best {@code count} players, best first.
+     */
+    public List<Entry> top(int count) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>(Math.min(count, byName.size()));
+            Deque<Node> path = new ArrayDeque<>();
+            Node node = root;
+            int position = 0;
+            int rank = 0;
+            int lastScore = 0;
+            while ((node != null || !path.isEmpty()) && entries.size() < count) {
+                while (node != null) {
+                    path.push(node);
+                    node = node.left;
+                }
+                node = path.pop();
+                position++;
+                if (position == 1 || node.score != lastScore) {
+                    rank = position;
+                    lastScore = node.score;
+                }
+                entries.add(new Entry(rank, node));
+                node = node.right;
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Players with a strictly higher score: one walk from the root
+    private int countAbove(int score) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.score > score) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    // Higher scores first; names break ties so every node has a distinct position
+    private static int compare(Node a, Node b) {
+        if (a.score != b.score)
+            return a.score > b.score ? -1 : 1;
+        return a.name.compareTo(b.name);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static Node insert(Node tree, Node node) {
+        if (tree == null)
+            return node;
+        if (node.priority > tree.priority) {
+            Node[] halves = split(tree, node);
+            node.left = halves[0];
+            node.right = halves[1];
+            update(node);
+            return node;
+        }
+        if (compare(node, tree) < 0)
+            tree.left = insert(tree.left, node);
+        else
+            tree.right = insert(tree.right, node);
+        update(tree);
+        return tree;
+    }
+
+    private static Node remove(Node tree, Node node) {
+        if (tree == null)
+            return null;
+        if (tree == node)
+            return merge(tree.left, tree.right);
+        if (compare(node, tree) < 0)
+            tree.left = remove(tree.left, node);
+        else
+            tree.right = remove(tree.right, node);
+        update(tree);
+        return tree;
+    }
+
+    // {nodes before key, nodes after key}
+    private static Node[] split(Node tree, Node key) {
+        if (tree == null)
+            return new Node[2];
+        if (compare(tree, key) < 0) {
+            Node[] halves = split(tree.right, key);
+            tree.right = halves[0];
+            update(tree);
+            halves[0] = tree;
+            return halves;
+        }
+        Node[] halves = split(tree.left, key);
+        tree.left = halves[1];
+        update(tree);
+        halves[1] = tree;
+        return halves;
+    }
+
+    // Every node in a comes before every node in b
+    private static Node merge(Node a, Node b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+}
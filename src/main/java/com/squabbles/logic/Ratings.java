@@ -0,0 +1,131 @@
+package com.squabbles.logic;
+
+import com.squabbles.model.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Elo ratings by player name, the source of Player.mmr for matchmaking.
+ * A game moves K * (1 - expected score) points from loser to winner, where
+ * the expected score follows the usual 400-point logistic curve; the K factor
+ * comes from squabbles.rating.k (default 32). Any thread may read a rating;
+ * only one thread (the stats writer) applies results.
+ */
+public class Ratings {
+    public static final int K_FACTOR = Integer.getInteger("squabbles.rating.k", 32);
+
+    /**
+     * One rated game, in the order it was played.
+     */
+    public static final class Match {
+        public final String winner;
+        public final String loser;
+        public final long playedAt;
+
+        public Match(String winner, String loser, long playedAt) {
+            this.winner = winner;
+            this.loser = loser;
+            this.playedAt = playedAt;
+        }
+    }
+
+    private final Map<String, Integer> ratings = new ConcurrentHashMap<>();
+
+    public int get(String name) {
+        return ratings.getOrDefault(name, Player.DEFAULT_MMR);
+    }
+
+    public void put(String name, int rating) {
+        ratings.put(name, rating);
+    }
+
+    public int size() {
+        return ratings.size();
+    }
+
+    /**
+     * Applies one game and returns the points the winner took from the loser.
+     */
+    public int apply(Match match) {
+        int winner = get(match.winner);
+        int loser = get(match.loser);
+        int delta = delta(winner, loser);
+        ratings.put(match.winner, winner + delta);
+        ratings.put(match.loser, loser - delta);
+        return delta;
+    }
+
+    // Chance the first player beats the second
+    static double expected(int rating, int opponent) {
+        return 1.0 / (1.0 + Math.pow(10, (opponent - rating) / 400.0));
+    }
+
+    static int delta(int winner, int loser) {
+        return (int) Math.round(K_FACTOR * (1.0 - expected(winner, loser)));
+    }
+
+    /**
+     * Replays a whole match history from default ratings. Elo is order dependent,
+     * but only within a group of players who have (indirectly) played each other:
+     * the history is split into those groups, and each group is replayed in order
+     * on its own fork-join task.
+     *
+     * @param history every rated game, oldest first
+     */
+    public static Ratings recompute(List<Match> history) {
+        // Union-find over player indices to find the independent groups
+        Map<String, Integer> index = new HashMap<>();
+        List<Integer> parent = new ArrayList<>();
+        for (Match match : history) {
+            int a = index.computeIfAbsent(match.winner, k -> add(parent));
+            int b = index.computeIfAbsent(match.loser, k -> add(parent));
+            union(parent, a, b);
+        }
+        Map<Integer, List<Match>> groups = new HashMap<>();
+        for (Match match : history) {
+            int root = find(parent, index.get(match.winner));
+            groups.computeIfAbsent(root, k -> new ArrayList<>()).add(match);
+        }
+
+        Ratings result = new Ratings();
+        groups.values().parallelStream().forEach(group -> {
+            Ratings local = new Ratings();
+            for (Match match : group) {
+                local.apply(match);
+            }
+            result.ratings.putAll(local.ratings);
+        });
+        return result;
+    }
+
+    /**
+     * Every rating, e.g. to persist after a recompute.
+     */
+    public Map<String, Integer> snapshot() {
+        return new HashMap<>(ratings);
+    }
+
+    private static int add(List<Integer> parent) {
+        parent.add(parent.size());
+        return parent.size() - 1;
+    }
+
+    private static int find(List<Integer> parent, int node) {
+        while (parent.get(node) != node) {
+            parent.set(node, parent.get(parent.get(node))); // Path halving
+            node = parent.get(node);
+        }
+        return node;
+    }
+
+    private static void union(List<Integer> parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB)
+            parent.set(rootB, rootA);
+    }
+}
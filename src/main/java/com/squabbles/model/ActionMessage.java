@@ -12,6 +12,8 @@ public class ActionMessage {
     public final String actionType;
     public final Map<String, Object> payload;
     public final long clientTimestamp;
+    // Server clock when the action was created, for queueing-latency metrics
+    public final long createdNanos = System.nanoTime();
 
     public ActionMessage(String playerId, long sequenceNumber, String actionType, Map<String, Object> payload,
             long clientTimestamp) {
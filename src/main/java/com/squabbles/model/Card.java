@@ -1,16 +1,26 @@
 package com.squabbles.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
+// Immutable: the canonical cards are shared by every room
 public abstract class Card {
     protected final int id;
     protected final List<Icon> icons;
+    // Bit n set = icon n is on the card. One long covers the 57 icons of the
+    // standard deck; larger orders spill into further words.
+    private final long[] iconBits;
 
     public Card(int id, List<Icon> icons) {
         this.id = id;
-        this.icons = new ArrayList<>(icons);
+        this.icons = List.copyOf(icons);
+        int maxId = 0;
+        for (Icon icon : icons) {
+            maxId = Math.max(maxId, icon.getId());
+        }
+        this.iconBits = new long[(maxId >>> 6) + 1];
+        for (Icon icon : icons) {
+            iconBits[icon.getId() >>> 6] |= 1L << icon.getId();
+        }
     }
 
     public int getId() {
@@ -21,8 +31,31 @@ public abstract class Card {
         return icons;
     }
 
-    public void shuffleIcons() {
-        Collections.shuffle(icons);
+    public boolean hasIcon(int iconId) {
+        int word = iconId >>> 6;
+        return iconId >= 0 && word < iconBits.length && (iconBits[word] & (1L << iconId)) != 0;
+    }
+
+    /**
+     * @return the lowest icon ID this card shares with the other, or -1 if none
+     */
+    public int commonIcon(Card other) {
+        int words = Math.min(iconBits.length, other.iconBits.length);
+        for (int w = 0; w < words; w++) {
+            long shared = iconBits[w] & other.iconBits[w];
+            if (shared != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(shared);
+        }
+        return -1;
+    }
+
+    public int sharedIconCount(Card other) {
+        int words = Math.min(iconBits.length, other.iconBits.length);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(iconBits[w] & other.iconBits[w]);
+        }
+        return count;
     }
 
     @Override
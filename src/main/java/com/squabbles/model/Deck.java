@@ -1,31 +1,58 @@
 package com.squabbles.model;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * A draw order over a shared, read-only card list. Only the permutation and
+ * the cursor belong to this deck, so many rooms can deal from the same cards
+ * and drawing is O(1).
+ */
 public class Deck<T extends Card> {
-    private List<T> cards;
+    private final List<T> cards;
+    private final int[] order;
+    private int next = 0;
 
     public Deck(List<T> cards) {
-        this.cards = new ArrayList<>(cards);
+        this.cards = cards;
+        this.order = new int[cards.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
     }
 
+    /**
+     * Shuffles the cards not drawn yet.
+     */
     public void shuffle() {
-        Collections.shuffle(cards);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = order.length - 1; i > next; i--) {
+            int j = next + random.nextInt(i - next + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
     }
 
     public T draw() {
-        if (cards.isEmpty())
+        if (isEmpty())
             return null;
-        return cards.remove(0);
+        return cards.get(order[next++]);
     }
 
     public boolean isEmpty() {
-        return cards.isEmpty();
+        return next >= order.length;
     }
 
+    /**
+     * @return the cards still to be drawn, in draw order
+     */
     public List<T> getCards() {
-        return cards;
+        List<T> remaining = new ArrayList<>(order.length - next);
+        for (int i = next; i < order.length; i++) {
+            remaining.add(cards.get(order[i]));
+        }
+        return remaining;
     }
 }
@@ -6,6 +6,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * Minimal player model.
  */
 public class Player {
+    public static final int DEFAULT_MMR = 1000;
+
     public final String id;
     public final String username;
     public volatile int mmr;
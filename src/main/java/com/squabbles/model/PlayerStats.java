@@ -0,0 +1,37 @@
+package com.squabbles.model;
+
+/**
+ * A player's win/loss record. Immutable; an update makes a new one.
+ */
+public class PlayerStats {
+    private final String name;
+    private final int wins;
+    private final int losses;
+
+    public PlayerStats(String name, int wins, int losses) {
+        this.name = name;
+        this.wins = wins;
+        this.losses = losses;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    public PlayerStats plus(int moreWins, int moreLosses) {
+        return new PlayerStats(name, wins + moreWins, losses + moreLosses);
+    }
+
+    @Override
+    public String toString() {
+        return "Wins: " + wins + " | Losses: " + losses;
+    }
+}
@@ -0,0 +1,236 @@
+package com.squabbles.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of ProtocolMessage.
+ *
+ * Frame: varint bodyLength, then the body:
+ * opcode (1 byte) | varint intCount | zigzag varint ints... |
+ * varint cardCount | per card: varint id (0 = none), varint iconCount, varint icons... |
+ * varint textLength + 1 (0 = no text) | UTF-8 text bytes
+ *
+ * "MATCH_RESULT true 3 4" is 8 bytes on the wire instead of 22, and decoding a
+ * frame without text allocates no strings.
+ */
+public final class BinaryCodec {
+    public static final int MAX_FRAME = 8192;
+
+    private BinaryCodec() {
+    }
+
+    public static byte[] encode(ProtocolMessage message) {
+        if (message.getType() == null)
+            throw new IllegalArgumentException("No opcode for message " + message.getKeyword());
+
+        Writer body = new Writer();
+        body.writeByte(message.getType().opcode());
+        int[] ints = message.ints();
+        body.writeVarint(ints.length);
+        for (int value : ints) {
+            body.writeVarint((value << 1) ^ (value >> 31)); // zigzag so -1 stays one byte
+        }
+        body.writeVarint(message.cardCount());
+        for (int i = 0; i < message.cardCount(); i++) {
+            int id = message.getCardId(i);
+            body.writeVarint(id);
+            if (id != 0) {
+                int[] icons = message.getCardIcons(i);
+                body.writeVarint(icons.length);
+                for (int icon : icons) {
+                    body.writeVarint(icon);
+                }
+            }
+        }
+        String text = message.getText();
+        if (text == null) {
+            body.writeVarint(0);
+        } else {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            body.writeVarint(bytes.length + 1);
+            body.writeBytes(bytes);
+        }
+        if (body.size > MAX_FRAME)
+            throw new IllegalArgumentException("Frame too large: " + body.size);
+
+        Writer header = new Writer();
+        header.writeVarint(body.size);
+        byte[] frame = new byte[header.size + body.size];
+        System.arraycopy(header.buf, 0, frame, 0, header.size);
+        System.arraycopy(body.buf, 0, frame, header.size, body.size);
+        return frame;
+    }
+
+    /**
+     * Blocking read of one text line (without the line terminator). Unlike Scanner it
+     * never reads past the newline, so the same stream can carry frames afterwards.
+     *
+     * @return the line, or null at end of stream
+     */
+    public static String readLine(InputStream in) throws IOException {
+        Writer line = new Writer();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size == 0)
+                    return null;
+                break;
+            }
+            if (line.size >= MAX_FRAME)
+                throw new IOException("Line too long");
+            line.writeByte(b);
+        }
+        int length = line.size;
+        if (length > 0 && line.buf[length - 1] == '\r')
+            length--;
+        return new String(line.buf, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Blocking read of one frame.
+     *
+     * @return the message, or null at end of stream
+     */
+    public static ProtocolMessage readFrame(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0)
+                    return null;
+                throw new EOFException("Stream ended inside a frame header");
+            }
+            if (shift > 28)
+                throw new IOException("Malformed frame length");
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+        if (length <= 0 || length > MAX_FRAME)
+            throw new IOException("Invalid frame length " + length);
+        byte[] body = in.readNBytes(length);
+        if (body.length < length)
+            throw new EOFException("Stream ended inside a frame");
+        return decodeBody(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Non-blocking decode for selector loops. Consumes one frame from the buffer
+     * (in read mode) if it is complete, otherwise leaves the position untouched.
+     *
+     * @return the message, or null if more bytes are needed
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public static ProtocolMessage tryDecode(ByteBuffer buffer) {
+        int start = buffer.position();
+        int length = 0;
+        for (int shift = 0;; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return null;
+            }
+            if (shift > 28)
+                throw new IllegalArgumentException("Malformed frame length");
+            int b = buffer.get() & 0xFF;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+        if (length <= 0 || length > MAX_FRAME)
+            throw new IllegalArgumentException("Invalid frame length " + length);
+        if (buffer.remaining() < length) {
+            buffer.position(start);
+            return null;
+        }
+        int end = buffer.position() + length;
+        ByteBuffer body = buffer.slice(buffer.position(), length);
+        buffer.position(end);
+        return decodeBody(body);
+    }
+
+    private static ProtocolMessage decodeBody(ByteBuffer body) {
+        try {
+            MessageType type = MessageType.fromOpcode(body.get() & 0xFF);
+            if (type == null)
+                throw new IllegalArgumentException("Unknown opcode");
+            int[] ints = new int[readCount(body)];
+            for (int i = 0; i < ints.length; i++) {
+                int raw = readVarint(body);
+                ints[i] = (raw >>> 1) ^ -(raw & 1);
+            }
+            int cardCount = readCount(body);
+            int[] cardIds = new int[cardCount];
+            int[][] cardIcons = new int[cardCount][];
+            for (int i = 0; i < cardCount; i++) {
+                cardIds[i] = readVarint(body);
+                if (cardIds[i] != 0) {
+                    int[] icons = new int[readCount(body)];
+                    for (int j = 0; j < icons.length; j++) {
+                        icons[j] = readVarint(body);
+                    }
+                    cardIcons[i] = icons;
+                }
+            }
+            String text = null;
+            int textLength = readVarint(body);
+            if (textLength > 0) {
+                byte[] bytes = new byte[textLength - 1];
+                body.get(bytes);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new ProtocolMessage(type, ints, cardIds, cardIcons, text);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated frame body");
+        }
+    }
+
+    private static int readCount(ByteBuffer buffer) {
+        int count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining())
+            throw new IllegalArgumentException("Invalid field count " + count);
+        return count;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift <= 28; shift += 7) {
+            int b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    // Minimal growable byte array; avoids ByteArrayOutputStream's synchronization
+    private static final class Writer {
+        byte[] buf = new byte[32];
+        int size;
+
+        void writeByte(int b) {
+            if (size == buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[size++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeBytes(byte[] bytes) {
+            if (size + bytes.length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + bytes.length));
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+    }
+}
@@ -1,16 +1,30 @@
 package com.squabbles.network;
 
+import com.squabbles.logic.CanonicalDeck;
+import com.squabbles.model.Card;
 import com.squabbles.model.Icon;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class BotClient extends ServerClient {
 
-    private boolean running = false;
+    private volatile boolean running = false;
     private Random random = new Random();
-    private Thread botThread;
-    private int difficultyLevel = 1; // 1: Simple, 2: Advanced
+    private volatile ScheduledFuture<?> nextMove;
+    private int difficultyLevel = 1; // 1: Simple, 2: Advanced, 3: Perfect
+    public static final int DIFFICULTY_PERFECT = 3;
+
+    // Perfect bots always know the answer but wait a log-normal delay first, the usual
+    // shape of human reaction times: -Dsquabbles.bot.perfect.medianMs and .sigma tune it
+    private static final double PERFECT_MEDIAN_MS = Integer.getInteger("squabbles.bot.perfect.medianMs", 1200);
+    private static final double PERFECT_SIGMA = Double
+            .parseDouble(System.getProperty("squabbles.bot.perfect.sigma", "0.35"));
+    private static final int PERFECT_MIN_MS = 300;
+    // Last center card the room showed us
+    private volatile Card centerCard;
 
     public BotClient(int playerId, LobbyServer lobby, int difficulty) {
         super(null, playerId, lobby); // No socket for bot
@@ -28,102 +42,89 @@ public class BotClient extends ServerClient {
         }
     }
 
+    @Override
+    public void sendMessage(ProtocolMessage message) {
+        if (message.is(NetworkProtocol.MSG_GAME_OVER)) {
+            stopBotLogic();
+        }
+    }
+
+    @Override
+    public void sendState(Card centerCard) {
+        // No need to encode anything; just remember what's in the middle
+        this.centerCard = centerCard;
+    }
+
+    @Override
+    protected void write(byte[] data) {
+        // No socket and nobody draining the outbound queue; bots ignore encoded state
+    }
+
     public void startBotLogic() {
         running = true;
-        botThread = new Thread(this::botLoop);
-        botThread.start();
+        scheduleNextMove();
     }
 
     public void stopBotLogic() {
         running = false;
-        if (botThread != null) {
-            botThread.interrupt();
+        ScheduledFuture<?> move = nextMove;
+        if (move != null) {
+            move.cancel(false);
         }
     }
 
-    private void botLoop() {
-        while (running) {
-            try {
-                // Reaction time based on difficulty
-                int reactionTime = (difficultyLevel == 1) ? 2000 + random.nextInt(2000) : 800 + random.nextInt(1000);
-                Thread.sleep(reactionTime);
-
-                if (!running)
-                    break;
+    // One timed callback per move on the lobby's shared bot scheduler instead of a thread per bot
+    private void scheduleNextMove() {
+        if (running) {
+            nextMove = getLobby().getBotScheduler().schedule(this::move, nextReactionTime(), TimeUnit.MILLISECONDS);
+        }
+    }
 
-                attemptMatch();
+    private void move() {
+        if (!running)
+            return;
+        try {
+            attemptMatch();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        scheduleNextMove();
+    }
 
-            } catch (InterruptedException e) {
-                break;
-            }
+    private long nextReactionTime() {
+        if (difficultyLevel >= DIFFICULTY_PERFECT) {
+            double delay = PERFECT_MEDIAN_MS * Math.exp(PERFECT_SIGMA * random.nextGaussian());
+            return Math.max(PERFECT_MIN_MS, Math.round(delay));
         }
+        return (difficultyLevel == 1) ? 2000 + random.nextInt(2000) : 800 + random.nextInt(1000);
     }
 
     private void attemptMatch() {
-        // Logic to find a match
-        // Since BotClient runs on the server, it has direct access to its cards via
-        // getters in ServerClient
-        // BUT, ServerClient logic usually relies on GameRoom to hold the state.
-        // In my design, ServerClient holds 'currentCard'. GameRoom holds 'centerCard'.
-        // Bot needs access to GameRoom to see center card?
-        // Or we can rely on the state sent via sendMessage (which we'd need to parse).
-
-        // Better approach: Give BotClient access to GameRoom (it has it via
-        // setGameRoom)
-        // But GameRoom fields are private.
-
-        // Let's cheat a bit for the bot and assume it can "see" the cards if we expose
-        // them or if we parse the last message.
-        // For simplicity, let's make the bot try to find a match on its current card vs
-        // center card.
-        // We need a way to get the center card from GameRoom or store it when received.
-
-        // Actually, let's just make the bot pick a random icon from its card and try
-        // it.
-        // If it's a valid match, it works. If not, it fails (maybe penalty).
-        // A smart bot would find the intersection.
-
-        if (getCurrentCard() == null)
+        // The bot holds its own card (ServerClient.currentCard) and remembers the
+        // center card from sendState, so it can reason about both directly.
+        GameRoom room = getGameRoom();
+        if (room == null || getCurrentCard() == null)
             return;
 
-        // To do this properly without changing GameRoom too much, let's assume the bot
-        // is "perfect" but slow,
-        // or "random" and spammy.
-
-        // Let's implement a "Perfect but Slow" bot for now.
-        // It needs to know the center card.
-        // I'll add a field to BotClient to store the center card, updated via
-        // sendMessage -> parse.
-
-        // Wait, I can't easily parse the string back to objects without a parser.
-        // Let's just make the bot pick a random icon from its own card.
-        // If it happens to match, great.
-
+        // Simple bots pick a random icon from their own card; if it happens to match, great.
         List<Icon> myIcons = getCurrentCard().getIcons();
         if (myIcons.isEmpty())
             return;
 
         Icon selected = myIcons.get(random.nextInt(myIcons.size()));
+        int iconId = selected.getId();
+
+        // Advanced bots double-check the guess against the center card and, half the
+        // time, spot the real match instead; perfect bots always do
+        Card center = centerCard;
+        if (difficultyLevel >= 2 && center != null && !center.hasIcon(iconId)
+                && (difficultyLevel >= DIFFICULTY_PERFECT || random.nextBoolean())) {
+            int common = CanonicalDeck.get().sharedIcon(getCurrentCard().getId(), center.getId());
+            if (common > 0)
+                iconId = common;
+        }
 
-        // Simulate sending the match attempt
-        // We can call processMessage directly or call gameRoom.handleMatch directly.
-        // Since we are on the server, we can call gameRoom.handleMatch directly if we
-        // have access.
-        // ServerClient has a 'processMessage' method but it expects a string.
-
-        // Let's use the string interface to be consistent.
-        String msg = NetworkProtocol.MSG_MATCH_ATTEMPT + " " + selected.getId();
-        // We need to inject this into the processing logic.
-        // ServerClient.processMessage is private.
-        // Let's make it protected or public, or just override run() (but run is for
-        // socket loop).
-
-        // Actually, I can just call a method on myself that mimics receiving a message
-        // from the "client" side of the bot.
-        super.processMessage(msg);
+        // Straight into the room: no message to format and parse back on the server
+        room.handleMatch(this, iconId);
     }
-
-    // Need to expose processMessage to subclass or make it protected in
-    // ServerClient
-    // I will update ServerClient to make processMessage protected.
 }
@@ -1,74 +1,205 @@
 package com.squabbles.network;
 
+import com.squabbles.logic.CanonicalDeck;
 import javafx.application.Platform;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 public class GameClient {
     private Socket socket;
-    private PrintWriter out;
-    private Scanner in;
-    private Consumer<String> onMessageReceived;
+    private OutputStream out;
+    private InputStream in;
+    private Consumer<ProtocolMessage> onMessageReceived;
     private int playerId = -1;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Binary frames are used when the server offers them, unless -Dsquabbles.client.protocol=text
+    private final boolean binaryEnabled = !"text".equalsIgnoreCase(System.getProperty("squabbles.client.protocol"));
+    private volatile boolean binaryOut = false;
+    private volatile boolean binaryIn = false;
+
+    // Match attempts carry an increasing sequence number and are resent until the server
+    // acknowledges them; the server applies each sequence at most once.
+    private static final long RETRY_AFTER_MS = 1000;
+    private static final int MAX_SENDS = 3;
+    private final AtomicInteger nextSequence = new AtomicInteger();
+    private final Map<Integer, PendingAttempt> pendingAttempts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService retryTimer;
+
+    private static final class PendingAttempt {
+        final int iconId;
+        volatile long sentAt = System.currentTimeMillis();
+        volatile int sends = 1;
+
+        PendingAttempt(int iconId) {
+            this.iconId = iconId;
+        }
+    }
 
     public int getPlayerId() {
         return playerId;
     }
 
-    public void connect(String host, int port, Consumer<String> onMessageReceived) throws IOException {
+    public void connect(String host, int port, Consumer<ProtocolMessage> onMessageReceived) throws IOException {
         this.onMessageReceived = onMessageReceived;
         socket = new Socket(host, port);
-        out = new PrintWriter(socket.getOutputStream(), true);
-        in = new Scanner(socket.getInputStream());
-
-        new Thread(() -> {
-            while (in.hasNextLine()) {
-                String line = in.nextLine();
-                if (line.startsWith(NetworkProtocol.MSG_WELCOME)) {
-                    try {
-                        this.playerId = Integer.parseInt(line.split(" ")[1]);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = new BufferedInputStream(socket.getInputStream());
+        retryTimer = Executors.newSingleThreadScheduledExecutor(ServerMode.BLOCKING.threadFactory("client-retry"));
+        retryTimer.scheduleWithFixedDelay(this::resendUnacknowledged, RETRY_AFTER_MS / 2, RETRY_AFTER_MS / 2,
+                TimeUnit.MILLISECONDS);
+
+        // Reader thread follows the same switch as the server (virtual threads when enabled)
+        ServerMode.fromProperty().threadFactory("client-reader").newThread(() -> {
+            try {
+                while (true) {
+                    ProtocolMessage message = readMessage();
+                    if (message == null)
+                        break;
+                    if (message.is(NetworkProtocol.MSG_WELCOME)) {
+                        this.playerId = message.getInt(0, -1);
+                        negotiate(message.getText());
+                    } else if (message.is(NetworkProtocol.MSG_PROTOCOL)
+                            && NetworkProtocol.hasCapability(message.getText(), NetworkProtocol.CAP_BINARY)) {
+                        // Server acknowledged; every following message is a frame
+                        binaryIn = true;
+                    } else if (message.is(NetworkProtocol.MSG_ACK)) {
+                        // Applied, duplicate or stale: either way the server has it
+                        pendingAttempts.remove(message.getInt(0, -1));
                     }
+                    Platform.runLater(() -> {
+                        if (this.onMessageReceived != null) {
+                            this.onMessageReceived.accept(message);
+                        }
+                    });
                 }
-                Platform.runLater(() -> {
-                    if (this.onMessageReceived != null) {
-                        this.onMessageReceived.accept(line);
-                    }
-                });
+            } catch (IOException e) {
+                if (!socket.isClosed())
+                    e.printStackTrace();
             }
         }).start();
     }
 
+    private ProtocolMessage readMessage() throws IOException {
+        while (true) {
+            if (binaryIn) {
+                return BinaryCodec.readFrame(in);
+            }
+            String line = BinaryCodec.readLine(in);
+            if (line == null)
+                return null;
+            try {
+                return ProtocolMessage.parse(line);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Ignoring malformed server message: " + line);
+            }
+        }
+    }
+
+    // Ask for whatever the server offers that we can use. We may send frames straight
+    // away because the server reads our PROTOCOL line before anything after it.
+    private void negotiate(String offered) {
+        boolean wantsBinary = binaryEnabled && NetworkProtocol.hasCapability(offered, NetworkProtocol.CAP_BINARY);
+        // Card IDs alone are only meaningful if both sides built the same deck
+        boolean wantsCardIds = NetworkProtocol.hasCapability(offered, NetworkProtocol.CAP_CARD_IDS)
+                && CanonicalDeck.get().getHash().equals(
+                        NetworkProtocol.capabilityValue(offered, NetworkProtocol.CAP_DECK_PREFIX));
+        if (!wantsBinary && !wantsCardIds)
+            return;
+
+        StringBuilder request = new StringBuilder(NetworkProtocol.MSG_PROTOCOL);
+        if (wantsBinary)
+            request.append(' ').append(NetworkProtocol.CAP_BINARY);
+        if (wantsCardIds)
+            request.append(' ').append(NetworkProtocol.CAP_CARD_IDS);
+        writeLock.lock();
+        try {
+            sendMessage(request.toString());
+            binaryOut = wantsBinary;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     public void sendMatchAttempt(int iconId) {
-        if (out != null) {
-            out.println(NetworkProtocol.MSG_MATCH_ATTEMPT + " " + iconId);
+        int sequence = nextSequence.incrementAndGet();
+        pendingAttempts.put(sequence, new PendingAttempt(iconId));
+        send(ProtocolMessage.of(MessageType.MATCH_ATTEMPT, iconId, sequence));
+    }
+
+    private void resendUnacknowledged() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, PendingAttempt> entry : pendingAttempts.entrySet()) {
+            PendingAttempt attempt = entry.getValue();
+            if (now - attempt.sentAt < RETRY_AFTER_MS)
+                continue;
+            if (attempt.sends >= MAX_SENDS) {
+                System.out.println("Giving up on match attempt " + entry.getKey());
+                pendingAttempts.remove(entry.getKey());
+                continue;
+            }
+            attempt.sends++;
+            attempt.sentAt = now;
+            send(ProtocolMessage.of(MessageType.MATCH_ATTEMPT, attempt.iconId, entry.getKey()));
         }
     }
 
     public void sendRequestState() {
-        if (out != null) {
-            out.println(NetworkProtocol.MSG_REQUEST_STATE);
-        }
+        send(ProtocolMessage.of(MessageType.REQUEST_STATE));
     }
 
     public void sendEndGame() {
-        if (out != null) {
-            out.println(NetworkProtocol.MSG_END_GAME);
-        }
+        send(ProtocolMessage.of(MessageType.END_GAME));
     }
 
     public void sendMessage(String message) {
-        if (out != null) {
-            out.println(message);
+        if (binaryOut) {
+            send(ProtocolMessage.parse(message));
+        } else {
+            write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public void send(ProtocolMessage message) {
+        if (binaryOut) {
+            write(BinaryCodec.encode(message));
+        } else {
+            write((message.toText() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void write(byte[] data) {
+        if (out == null)
+            return;
+        writeLock.lock();
+        try {
+            out.write(data);
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     public void disconnect() {
+        if (retryTimer != null)
+            retryTimer.shutdownNow();
+        pendingAttempts.clear();
         try {
             if (socket != null)
                 socket.close();
@@ -77,7 +208,7 @@ public class GameClient {
         }
     }
 
-    public void setMessageHandler(Consumer<String> handler) {
+    public void setMessageHandler(Consumer<ProtocolMessage> handler) {
         this.onMessageReceived = handler;
     }
 }
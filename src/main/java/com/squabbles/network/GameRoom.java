@@ -1,25 +1,113 @@
 package com.squabbles.network;
 
-import com.squabbles.logic.DeckGenerator;
+import com.squabbles.logic.CanonicalDeck;
+import com.squabbles.model.ActionMessage;
 import com.squabbles.model.Card;
 import com.squabbles.model.Deck;
+import com.squabbles.model.MatchState;
 
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One match. A room is an actor: socket threads, bots and the turn timer only
+ * post ActionMessages to its mailbox, and the room's executor works through
+ * them one at a time, so game state is never touched by two threads at once
+ * and needs no lock. Under the TickEngine the mailbox is instead emptied once
+ * per tick, and card updates go out as a per-player diff at the end of it.
+ *
+ * Race rooms (up to MAX_RACE_PLAYERS) drop the turn order: everyone plays the
+ * center card at once and the RaceBoard picks the first correct claim before
+ * anything is posted, so only the outcome goes through the mailbox.
+ */
 public class GameRoom {
-    private List<ServerClient> players;
+    public enum State {
+        STARTING, RUNNING, FINISHED
+    }
+
+    public static final int MAX_RACE_PLAYERS = 8;
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    // Mailbox action types and payload keys
+    private static final String ACTION_START = "START";
+    private static final String ACTION_MATCH = "MATCH_ATTEMPT";
+    private static final String ACTION_TIMEOUT = "TURN_TIMEOUT";
+    private static final String ACTION_STATE = "REQUEST_STATE";
+    private static final String ACTION_END = "END_GAME";
+    private static final String ACTION_LEAVE = "DISCONNECT";
+    private static final String ACTION_ABANDON = "ABANDON";
+    private static final String KEY_CLIENT = "client";
+    private static final String KEY_ICON = "icon";
+    private static final String KEY_TURN = "turn";
+    private static final String KEY_CLAIM = "claim";
+
+    // Actions handled per executor turn before the room yields to other rooms
+    private static final int DRAIN_LIMIT = 64;
+
+    private static final LongAdder ACTIONS = ServerMetrics.counter("rooms.actions");
+    private static final LongAdder ACTION_LATENCY_US = ServerMetrics.counter("rooms.actionLatencyMicrosTotal");
+
+    static {
+        ServerMetrics.gauge("rooms.avgActionLatencyMicros",
+                () -> ACTIONS.sum() == 0 ? 0 : ACTION_LATENCY_US.sum() / ACTIONS.sum());
+    }
+
+    private final long id = NEXT_ID.incrementAndGet();
+    private volatile State state = State.STARTING;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private final LobbyServer lobby;
+    // Copy-on-write so the reaper can look at players from outside the room
+    private final List<ServerClient> players;
+    private final CanonicalDeck canonical;
     private Deck<Card> deck;
     private Card centerCard;
     private boolean gameRunning = false;
     private final int WIN_SCORE = 10;
     private final int LOSE_SCORE = -10;
     private int currentTurnIndex = 0;
+    private final HashedWheelTimer timer;
+    private final boolean race;
+    // Race rooms only; read by player threads, so published once the cards are dealt
+    private volatile RaceBoard board;
+
+    private final Queue<ActionMessage> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mailboxDepth = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Executor executor;
+    // Set when rooms run on the fixed-rate tick engine instead of per-action drains
+    private final TickEngine tickEngine;
+    private final MatchState matchState;
+    private long turnDeadline = Long.MAX_VALUE; // tick mode only
+    private boolean stateChanged = false; // tick mode only
+    private boolean turnChanged = false; // tick mode only
+
+    public GameRoom(List<ServerClient> players, LobbyServer lobby) {
+        this(players, lobby, false);
+    }
 
-    public GameRoom(List<ServerClient> players) {
-        this.players = new ArrayList<>(players);
-        List<Card> generatedCards = new DeckGenerator().generateDeck();
-        this.deck = new Deck<>(generatedCards);
+    public GameRoom(List<ServerClient> players, LobbyServer lobby, boolean race) {
+        this.race = race;
+        this.players = new CopyOnWriteArrayList<>(players);
+        this.lobby = lobby;
+        this.timer = lobby.getTimer();
+        this.executor = lobby.getRoomExecutor();
+        this.tickEngine = lobby.getTickEngine();
+        this.matchState = new MatchState(String.valueOf(id));
+        // Every room deals from the same canonical cards; only the draw order is per room
+        this.canonical = CanonicalDeck.get();
+        this.deck = new Deck<>(canonical.getCards());
         this.deck.shuffle();
 
         for (ServerClient player : players) {
@@ -28,16 +116,258 @@ public class GameRoom {
         }
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public int getMailboxDepth() {
+        return mailboxDepth.get();
+    }
+
+    // Everything below posts to the mailbox and returns straight away
+
     public void startGame() {
+        if (tickEngine != null)
+            tickEngine.add(this);
+        post(ACTION_START, Map.of());
+    }
+
+    public void handleMatch(ServerClient player, int iconId) {
+        handleMatch(player, iconId, 0);
+    }
+
+    /**
+     * @param sequence the client's sequence number, acknowledged once the attempt is
+     *                 resolved; 0 for unsequenced attempts, which are not acknowledged
+     */
+    public void handleMatch(ServerClient player, int iconId, long sequence) {
+        if (race) {
+            claimRace(player, iconId, sequence);
+            return;
+        }
+        post(ACTION_MATCH, sequence, Map.of(KEY_CLIENT, player, KEY_ICON, iconId));
+    }
+
+    // Runs on the claiming player's thread. Late claims are answered here and never reach the mailbox.
+    private void claimRace(ServerClient player, int iconId, long sequence) {
+        RaceBoard current = board;
+        if (current == null || state != State.RUNNING)
+            return;
+        RaceBoard.Claim claim = current.claim(player.getCurrentCard(), iconId);
+        if (claim == RaceBoard.Claim.STALE) {
+            if (sequence > 0)
+                player.sendMessage(ProtocolMessage.ack(sequence, NetworkProtocol.ACK_STALE));
+            player.sendMessage(ProtocolMessage.of(MessageType.STALE_CLAIM, current.getVersion()));
+            return;
+        }
+        post(ACTION_MATCH, sequence, Map.of(KEY_CLIENT, player, KEY_ICON, iconId, KEY_CLAIM, claim));
+    }
+
+    public void sendState(ServerClient player) {
+        post(ACTION_STATE, Map.of(KEY_CLIENT, player));
+    }
+
+    public void endGame(ServerClient player) {
+        post(ACTION_END, Map.of(KEY_CLIENT, player));
+    }
+
+    public void removePlayer(ServerClient player) {
+        post(ACTION_LEAVE, Map.of(KEY_CLIENT, player));
+    }
+
+    /**
+     * Closes the room without recording results, for rooms the registry found orphaned.
+     */
+    public void abandon() {
+        post(ACTION_ABANDON, Map.of());
+    }
+
+    public boolean hasConnectedHumans() {
+        for (ServerClient p : players) {
+            if (!(p instanceof BotClient) && p.isConnected())
+                return true;
+        }
+        return false;
+    }
+
+    private void post(String actionType, Map<String, Object> payload) {
+        post(actionType, 0, payload);
+    }
+
+    private void post(String actionType, long sequence, Map<String, Object> payload) {
+        ServerClient client = (ServerClient) payload.get(KEY_CLIENT);
+        String playerId = client == null ? null : String.valueOf(client.getPlayerId());
+        mailbox.add(new ActionMessage(playerId, sequence, actionType, payload, System.currentTimeMillis()));
+        mailboxDepth.incrementAndGet();
+        // Ticked rooms leave the mailbox for the next tick
+        if (tickEngine == null && draining.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Server is shutting down; nothing will drain this room again
+            draining.set(false);
+        }
+    }
+
+    // Runs on the room executor; the draining flag makes sure only one thread is ever in here
+    private void drain() {
+        // Everything this turn sends (results, both card updates, next turn) is
+        // flushed to each player once at the end instead of once per message
+        List<ServerClient> batch = beginBatch();
+        try {
+            processMailbox(DRAIN_LIMIT);
+        } finally {
+            endBatch(batch);
+            draining.set(false);
+        }
+        // Something arrived after the last poll, or we hit the limit: go round again
+        if (!mailbox.isEmpty() && draining.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * One step of the tick engine, on the room's worker thread: resolve every input
+     * queued since the last tick, expire the turn if its deadline passed, then send
+     * each player only what changed in their view, once.
+     */
+    void tick(long now) {
+        matchState.tickNumber++;
+        List<ServerClient> batch = beginBatch();
+        try {
+            processMailbox(Integer.MAX_VALUE);
+            if (gameRunning && now >= turnDeadline) {
+                lastActivity = now;
+                onTurnTimeout(players.get(currentTurnIndex), turnNumber);
+            }
+            if (state != State.FINISHED)
+                flushTick();
+        } finally {
+            endBatch(batch);
+        }
+    }
+
+    private void flushTick() {
+        if (stateChanged) {
+            stateChanged = false;
+            for (ServerClient p : players) {
+                // MatchState remembers the last view each player was sent
+                String key = "view:" + p.getPlayerId();
+                Long view = viewOf(p);
+                if (!view.equals(matchState.entities.get(key))) {
+                    p.sendState(centerCard);
+                    matchState.entities.put(key, view);
+                }
+            }
+        }
+        if (turnChanged) {
+            turnChanged = false;
+            broadcast(ProtocolMessage.of(MessageType.TURN_UPDATE, players.get(currentTurnIndex).getPlayerId()));
+        }
+    }
+
+    private Long viewOf(ServerClient p) {
+        long center = centerCard == null ? 0 : centerCard.getId();
+        long own = p.getCurrentCard() == null ? 0 : p.getCurrentCard().getId();
+        return (center << 32) | own;
+    }
+
+    private void processMailbox(int limit) {
+        ActionMessage action;
+        int handled = 0;
+        while (handled < limit && (action = mailbox.poll()) != null) {
+            mailboxDepth.decrementAndGet();
+            handled++;
+            ACTIONS.increment();
+            ACTION_LATENCY_US.add((System.nanoTime() - action.createdNanos) / 1000);
+            try {
+                process(action);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void process(ActionMessage action) {
+        ServerClient client = (ServerClient) action.payload.get(KEY_CLIENT);
+        if (state == State.FINISHED) {
+            // Only a late state request still gets an answer
+            if (ACTION_STATE.equals(action.actionType))
+                client.sendState(centerCard);
+            return;
+        }
+        switch (action.actionType) {
+            case ACTION_START:
+                dealAndStart();
+                break;
+            case ACTION_MATCH:
+                lastActivity = System.currentTimeMillis();
+                if (action.sequenceNumber > 0)
+                    client.sendMessage(ProtocolMessage.ack(action.sequenceNumber, NetworkProtocol.ACK_APPLIED));
+                if (race)
+                    resolveRaceClaim(client, (RaceBoard.Claim) action.payload.get(KEY_CLAIM));
+                else
+                    resolveMatch(client, (Integer) action.payload.get(KEY_ICON));
+                break;
+            case ACTION_TIMEOUT:
+                lastActivity = System.currentTimeMillis();
+                onTurnTimeout(client, (Integer) action.payload.get(KEY_TURN));
+                break;
+            case ACTION_STATE:
+                client.sendState(centerCard);
+                break;
+            case ACTION_END:
+                onEndGame(client);
+                break;
+            case ACTION_LEAVE:
+                onPlayerLeft(client);
+                break;
+            case ACTION_ABANDON:
+                gameRunning = false;
+                cancelTurnTimer();
+                // Anyone still connected would otherwise sit in the game view forever
+                broadcast(gameOver("The game was abandoned."));
+                closeRoom();
+                break;
+            default:
+                System.out.println("Room " + id + " ignoring unknown action " + action);
+        }
+    }
+
+    private void dealAndStart() {
+        if (state != State.STARTING)
+            return; // Someone left while the room was being set up
         gameRunning = true;
+        state = State.RUNNING;
+        matchState.startTime = System.currentTimeMillis();
         centerCard = deck.draw();
 
         for (ServerClient player : players) {
             player.setCurrentCard(deck.draw());
             player.sendState(centerCard);
+            matchState.entities.put("view:" + player.getPlayerId(), viewOf(player));
         }
 
-        broadcast(NetworkProtocol.MSG_START_GAME);
+        broadcast(ProtocolMessage.of(MessageType.START_GAME));
+
+        if (race) {
+            board = new RaceBoard(canonical, centerCard);
+            broadcast(ProtocolMessage.of(MessageType.TURN_UPDATE, NetworkProtocol.RACE_TURN));
+            return;
+        }
 
         // Randomly pick starting player
         currentTurnIndex = (int) (Math.random() * players.size());
@@ -51,53 +381,75 @@ public class GameRoom {
         }
     }
 
-    private java.util.Timer turnTimer;
+    private HashedWheelTimer.Timeout turnTimeout;
+    private int turnNumber = 0;
 
     private void broadcastTurn() {
-        if (!gameRunning)
+        if (!gameRunning || race)
             return;
         
         // Cancel previous timer
-        if (turnTimer != null) {
-            turnTimer.cancel();
-        }
+        cancelTurnTimer();
 
         ServerClient current = players.get(currentTurnIndex);
-        broadcast(NetworkProtocol.MSG_TURN_UPDATE + " " + current.getPlayerId());
-
-        // Start new timer (10 seconds)
-        turnTimer = new java.util.Timer();
-        turnTimer.schedule(new java.util.TimerTask() {
-            @Override
-            public void run() {
-                // Time's up! Skip turn.
-                // We need to synchronize this to avoid race conditions with handleMatch
-                synchronized (GameRoom.this) {
-                    if (gameRunning && players.get(currentTurnIndex) == current) {
-                        // Penalize player for running out of time
-                        current.setLives(current.getLives() - 1);
-                        if (current.getLives() <= 0) {
-                            endGameWithLoser(current, "ran out of lives! DEFEAT!");
-                            return;
-                        }
-                        current.sendMessage(NetworkProtocol.MSG_MATCH_RESULT + " false " + current.getScore() + " " + current.getLives() + " Time's up!");
-                        nextTurn();
-                    }
-                }
+        int turn = ++turnNumber;
+        if (tickEngine != null) {
+            // Announced after this tick's card diff; the tick itself checks the deadline
+            turnChanged = true;
+            turnDeadline = System.currentTimeMillis() + 10000;
+            return;
+        }
+        broadcast(ProtocolMessage.of(MessageType.TURN_UPDATE, current.getPlayerId()));
+
+        // Register the 10 second deadline with the shared wheel; it only posts to the mailbox
+        turnTimeout = timer.schedule(() -> post(ACTION_TIMEOUT, Map.of(KEY_CLIENT, current, KEY_TURN, turn)),
+                10, TimeUnit.SECONDS);
+    }
+
+    private void onTurnTimeout(ServerClient current, int turn) {
+        // Time's up! Skip turn. A move that was already queued ahead of us bumped turnNumber.
+        if (gameRunning && turnNumber == turn) {
+            // Penalize player for running out of time
+            current.setLives(current.getLives() - 1);
+            if (current.getLives() <= 0) {
+                endGameWithLoser(current, "ran out of lives! DEFEAT!");
+                return;
             }
-        }, 10000);
+            current.sendMessage(matchResult(false, current, "Time's up!"));
+            nextTurn();
+        }
     }
 
-    private void nextTurn() {
-        if (turnTimer != null) {
-            turnTimer.cancel();
-            turnTimer = null;
+    private void cancelTurnTimer() {
+        turnDeadline = Long.MAX_VALUE;
+        // A deadline that already fired just returns false; turnNumber catches any that lose the race
+        if (turnTimeout != null) {
+            turnTimeout.cancel();
         }
+        turnTimeout = null;
+    }
+
+    private void nextTurn() {
+        cancelTurnTimer();
         currentTurnIndex = (currentTurnIndex + 1) % players.size();
         broadcastTurn();
     }
 
-    public synchronized void handleMatch(ServerClient player, int iconId) {
+    private List<ServerClient> beginBatch() {
+        List<ServerClient> batch = new ArrayList<>(players);
+        for (ServerClient p : batch) {
+            p.beginBatch();
+        }
+        return batch;
+    }
+
+    private void endBatch(List<ServerClient> batch) {
+        for (ServerClient p : batch) {
+            p.endBatch();
+        }
+    }
+
+    private void resolveMatch(ServerClient player, int iconId) {
         if (!gameRunning)
             return;
 
@@ -108,15 +460,10 @@ public class GameRoom {
         }
         
         // Cancel timer immediately upon action
-        if (turnTimer != null) {
-            turnTimer.cancel();
-            turnTimer = null;
-        }
-
-        boolean onPlayerCard = player.getCurrentCard().getIcons().stream().anyMatch(i -> i.getId() == iconId);
-        boolean onCenterCard = centerCard.getIcons().stream().anyMatch(i -> i.getId() == iconId);
+        cancelTurnTimer();
 
-        if (onPlayerCard && onCenterCard) {
+        // The two cards share exactly one icon; the table has it ready
+        if (iconId == canonical.sharedIcon(player.getCurrentCard().getId(), centerCard.getId())) {
             centerCard = player.getCurrentCard();
             if (!deck.isEmpty()) {
                 player.setCurrentCard(deck.draw());
@@ -135,7 +482,7 @@ public class GameRoom {
             }
 
             // Format: MATCH_RESULT success score lives
-            player.sendMessage(NetworkProtocol.MSG_MATCH_RESULT + " true " + player.getScore() + " " + player.getLives());
+            player.sendMessage(matchResult(true, player, null));
             broadcastState();
             nextTurn();
         } else {
@@ -145,68 +492,163 @@ public class GameRoom {
                 return;
             }
             // Format: MATCH_RESULT success score lives
-            player.sendMessage(NetworkProtocol.MSG_MATCH_RESULT + " false " + player.getScore() + " " + player.getLives());
+            player.sendMessage(matchResult(false, player, null));
             nextTurn();
         }
     }
 
+    private void resolveRaceClaim(ServerClient player, RaceBoard.Claim claim) {
+        if (!gameRunning)
+            return;
+        if (!players.contains(player)) {
+            // They left after winning the board; the center still moved for everyone else
+            if (claim == RaceBoard.Claim.WON) {
+                centerCard = board.getCenter();
+                broadcastState();
+            }
+            return;
+        }
+        if (claim == RaceBoard.Claim.WON) {
+            // The board already shows the player's card; score it and deal them the next one
+            centerCard = board.getCenter();
+            player.setScore(player.getScore() + 1);
+            if (player.getScore() >= WIN_SCORE) {
+                endGameWithWinner(player, "reached " + WIN_SCORE + " points! VICTORY!");
+                return;
+            }
+            if (deck.isEmpty()) {
+                endGameWithWinner(leader(), "deck empty! VICTORY!");
+                return;
+            }
+            player.setCurrentCard(deck.draw());
+            player.sendMessage(matchResult(true, player, null));
+            broadcastState();
+        } else {
+            player.setLives(player.getLives() - 1);
+            if (player.getLives() <= 0) {
+                dropRacer(player, "ran out of lives! DEFEAT!");
+                return;
+            }
+            player.sendMessage(matchResult(false, player, null));
+        }
+    }
+
+    // A race goes on without an eliminated player until only one is left
+    private void dropRacer(ServerClient player, String reason) {
+        players.remove(player);
+        player.setGameRoom(null);
+        player.sendMessage(gameOver("You lost. " + reason));
+        recordResult(player, false);
+        if (players.size() == 1)
+            endGameWithWinner(players.get(0), "outlasted everyone! VICTORY!");
+        else if (players.isEmpty())
+            closeRoom();
+    }
+
+    // Bots have no record of their own, so they don't go on the leaderboard
+    private void recordResult(ServerClient player, boolean won) {
+        if (!(player instanceof BotClient))
+            lobby.getStatsWriter().record(player, won);
+    }
+
+    // Ratings are head to head, between two people. A race has no single opponent to rate
+    // against (the winner would gain once per racer), so races only count as wins and losses.
+    private void recordMatch(ServerClient winner, ServerClient loser) {
+        if (race)
+            return;
+        if (!(winner instanceof BotClient) && !(loser instanceof BotClient))
+            lobby.getStatsWriter().recordMatch(winner.getPlayerName(), loser.getPlayerName());
+    }
+
+    private ServerClient leader() {
+        ServerClient best = players.get(0);
+        for (ServerClient p : players) {
+            if (p.getScore() > best.getScore())
+                best = p;
+        }
+        return best;
+    }
+
     private void broadcastState() {
+        if (tickEngine != null) {
+            stateChanged = true;
+            return;
+        }
         for (ServerClient p : players) {
             p.sendState(centerCard);
         }
     }
 
-    private void broadcast(String message) {
+    // MATCH_RESULT success score lives [reason]
+    private static ProtocolMessage matchResult(boolean success, ServerClient player, String reason) {
+        return ProtocolMessage.withText(MessageType.MATCH_RESULT, reason, success ? 1 : 0, player.getScore(),
+                player.getLives());
+    }
+
+    private static ProtocolMessage gameOver(String reason) {
+        return ProtocolMessage.withText(MessageType.GAME_OVER, reason);
+    }
+
+    private void broadcast(ProtocolMessage message) {
         for (ServerClient p : players) {
             p.sendMessage(message);
         }
     }
 
-    public void sendState(ServerClient player) {
-        player.sendState(centerCard);
-    }
-
-    public void endGame(ServerClient player) {
+    private void onEndGame(ServerClient player) {
         gameRunning = false;
-        if (turnTimer != null) turnTimer.cancel();
-        
+        cancelTurnTimer();
+
         // Update DB: Player left, so they lose? Or just void?
         // Let's count it as a loss for the quitter.
-        com.squabbles.util.DatabaseManager.updateStats(player.getPlayerName(), false);
-        
-        broadcast(NetworkProtocol.MSG_GAME_OVER + " Player " + player.getPlayerName() + " ended the game.");
+        recordResult(player, false);
+
+        broadcast(gameOver("Player " + player.getPlayerName() + " ended the game."));
         closeRoom();
     }
 
-    public void removePlayer(ServerClient player) {
+    private void onPlayerLeft(ServerClient player) {
+        if (race && gameRunning && players.size() > 2) {
+            players.remove(player);
+            recordResult(player, false);
+            return;
+        }
         if (gameRunning) {
             gameRunning = false;
-            if (turnTimer != null) turnTimer.cancel();
+            cancelTurnTimer();
             
             // Opponent left, remaining player wins
             for (ServerClient p : players) {
                 if (p != player) {
-                     com.squabbles.util.DatabaseManager.updateStats(p.getPlayerName(), true);
+                     recordResult(p, true);
+                     recordMatch(p, player);
                 }
             }
-             com.squabbles.util.DatabaseManager.updateStats(player.getPlayerName(), false);
+             recordResult(player, false);
 
-            broadcast(NetworkProtocol.MSG_GAME_OVER + " The opponent fled in terror! You win by default!");
+            broadcast(gameOver("The opponent fled in terror! You win by default!"));
+            players.remove(player);
+        } else {
+            // Left while the room was still being set up: no result, but let the others go
+            players.remove(player);
+            broadcast(gameOver("Your opponent left before the game started."));
         }
-        players.remove(player);
+        // The match can't go on without them; release the room rather than leave it to the reaper
+        closeRoom();
     }
 
     private void endGameWithWinner(ServerClient winner, String reason) {
         gameRunning = false;
-        if (turnTimer != null) turnTimer.cancel();
+        cancelTurnTimer();
         
         for (ServerClient p : players) {
             if (p == winner) {
-                p.sendMessage(NetworkProtocol.MSG_GAME_OVER + " You win! " + reason);
-                com.squabbles.util.DatabaseManager.updateStats(p.getPlayerName(), true);
+                p.sendMessage(gameOver("You win! " + reason));
+                recordResult(p, true);
             } else {
-                p.sendMessage(NetworkProtocol.MSG_GAME_OVER + " You lost. Opponent " + reason);
-                com.squabbles.util.DatabaseManager.updateStats(p.getPlayerName(), false);
+                p.sendMessage(gameOver("You lost. Opponent " + reason));
+                recordResult(p, false);
+                recordMatch(winner, p);
             }
         }
         closeRoom();
@@ -214,27 +656,33 @@ public class GameRoom {
 
     private void endGameWithLoser(ServerClient loser, String reason) {
         gameRunning = false;
-        if (turnTimer != null) turnTimer.cancel();
+        cancelTurnTimer();
         
         for (ServerClient p : players) {
             if (p == loser) {
-                p.sendMessage(NetworkProtocol.MSG_GAME_OVER + " You lost. " + reason);
-                com.squabbles.util.DatabaseManager.updateStats(p.getPlayerName(), false);
+                p.sendMessage(gameOver("You lost. " + reason));
+                recordResult(p, false);
             } else {
-                p.sendMessage(NetworkProtocol.MSG_GAME_OVER + " You win! Opponent " + reason);
-                com.squabbles.util.DatabaseManager.updateStats(p.getPlayerName(), true);
+                p.sendMessage(gameOver("You win! Opponent " + reason));
+                recordResult(p, true);
+                recordMatch(p, loser);
             }
         }       
         closeRoom();
     }
 
     private void closeRoom() {
-        // Cleanup if needed
+        if (state == State.FINISHED)
+            return;
+        state = State.FINISHED;
         for (ServerClient p : players) {
             p.setGameRoom(null);
             if (p instanceof BotClient) {
                 ((BotClient) p).stopBotLogic();
             }
         }
+        lobby.getRooms().release(this);
+        if (tickEngine != null)
+            tickEngine.remove(this);
     }
 }
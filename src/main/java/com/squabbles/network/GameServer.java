@@ -1,69 +1,187 @@
 package com.squabbles.network;
 
+import com.squabbles.logic.DeckVerifier;
+import com.squabbles.logic.Ratings;
+import com.squabbles.util.DatabaseManager;
+
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GameServer implements Runnable {
     private int port;
     private ServerSocket serverSocket;
-    private boolean running = false;
-    private ExecutorService pool = Executors.newCachedThreadPool();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private ExecutorService pool;
     private LobbyServer lobby;
+    private final HashedWheelTimer timer;
+    private final ServerMode mode;
+    private final List<NioEventLoop> eventLoops = new ArrayList<>();
 
     public GameServer(int port) {
+        this(port, ServerMode.fromProperty());
+    }
+
+    public GameServer(int port, ServerMode mode) {
         this.port = port;
-        this.lobby = new LobbyServer();
+        this.mode = mode;
+        this.pool = mode.newConnectionExecutor();
+        this.timer = LobbyServer.newTimer();
+        this.lobby = new LobbyServer(mode.threadFactory("game"), timer);
+        ServerMetrics.gauge("server.connections", lobby::getClientCount);
+        ServerMetrics.gauge("lobby.queued", lobby::getQueuedCount);
+        ServerMetrics.gauge("bots.scheduledMoves", () -> lobby.getBotScheduler().getQueue().size());
+        ServerMetrics.gauge("timer.pendingDeadlines", timer::pendingCount);
     }
 
     @Override
     public void run() {
         try {
-            serverSocket = new ServerSocket(port);
+            // Refuse to deal from a deck that breaks the one-shared-icon rule
+            if (!DeckVerifier.verifyShipped()) {
+                System.out.println("Deck verification failed; server not started.");
+                return;
+            }
+            DatabaseManager.initialize();
+            int ranked = DatabaseManager.loadLeaderboard(lobby.getLeaderboard());
+            System.out.println("Leaderboard: " + ranked + " players");
+            // -Dsquabbles.rating.recompute=true rebuilds every rating from the match history first
+            if (Boolean.getBoolean("squabbles.rating.recompute")) {
+                long start = System.nanoTime();
+                List<Ratings.Match> history = DatabaseManager.loadMatchHistory();
+                Ratings recomputed = Ratings.recompute(history);
+                DatabaseManager.replaceRatings(recomputed.snapshot());
+                System.out.println("Recomputed " + recomputed.size() + " ratings from " + history.size()
+                        + " matches in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+            int rated = DatabaseManager.loadRatings(lobby.getRatings());
+            System.out.println("Ratings: " + rated + " players");
+            lobby.start();
             running = true;
-            System.out.println("Server started on port " + port);
-            System.out.println("Lobby System Active. Waiting for players...");
-
-            while (running) {
-                Socket socket = serverSocket.accept();
-                System.out.println("New connection received.");
-
-                // Create a new client handler
-                // We assign a temporary ID, or let the Lobby handle it.
-                // For simplicity, let's generate a random ID or increment.
-                int playerId = (int) (Math.random() * 10000);
-                ServerClient client = new ServerClient(socket, playerId, lobby);
-
-                lobby.addClient(client);
-                pool.execute(client);
+            startStatsReporter();
+            if (mode == ServerMode.NIO) {
+                runNio();
+            } else {
+                runBlocking();
             }
-
         } catch (IOException e) {
-            e.printStackTrace();
+            if (running)
+                e.printStackTrace();
         } finally {
             stop();
         }
     }
 
+    private void runBlocking() throws IOException {
+        serverSocket = new ServerSocket(port);
+        System.out.println("Server started on port " + port + " (" + mode + ")");
+        System.out.println("Lobby System Active. Waiting for players...");
+
+        while (running) {
+            Socket socket = serverSocket.accept();
+            System.out.println("New connection received.");
+
+            // Create a new client handler
+            // We assign a temporary ID, or let the Lobby handle it.
+            // For simplicity, let's generate a random ID or increment.
+            ServerClient client = new ServerClient(socket, nextPlayerId(), lobby);
+
+            lobby.addClient(client);
+            pool.execute(client);
+        }
+    }
+
+    private void runNio() throws IOException {
+        int loopCount = Integer.getInteger("squabbles.nio.threads", Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < Math.max(1, loopCount); i++) {
+            NioEventLoop loop = new NioEventLoop(lobby, this::nextPlayerId);
+            eventLoops.add(loop);
+            pool.execute(loop);
+        }
+
+        // Accepting stays blocking on this thread; the loops only do I/O
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        System.out.println("Server started on port " + port + " (" + mode + ", " + eventLoops.size() + " event loops)");
+        System.out.println("Lobby System Active. Waiting for players...");
+
+        int next = 0;
+        while (running) {
+            SocketChannel channel = serverChannel.accept();
+            eventLoops.get(next).register(channel);
+            next = (next + 1) % eventLoops.size();
+        }
+    }
+
+    // Periodic one-line metrics dump, enabled with -Dsquabbles.server.statsInterval=<seconds>
+    private void startStatsReporter() {
+        int interval = Integer.getInteger("squabbles.server.statsInterval", 0);
+        if (interval <= 0)
+            return;
+        mode.threadFactory("stats").newThread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(interval * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println("[stats " + mode + "] " + ServerMetrics.snapshot());
+            }
+        }).start();
+    }
+
+    private int nextPlayerId() {
+        return (int) (Math.random() * 10000);
+    }
+
+    // Called from run()'s finally and from the shutdown hook; only the first call does anything
     public void stop() {
+        if (!stopped.compareAndSet(false, true))
+            return;
         running = false;
         try {
             if (serverSocket != null)
                 serverSocket.close();
-            pool.shutdown();
+            if (serverChannel != null)
+                serverChannel.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        for (NioEventLoop loop : eventLoops) {
+            loop.stop();
+        }
+        // Timeouts post into rooms, so the wheel goes before the room executor shuts down
+        timer.stop();
+        lobby.stop();
+        pool.shutdown();
+        DatabaseManager.shutdown();
     }
 
     public int getPort() {
         return port;
     }
 
+    public ServerMode getMode() {
+        return mode;
+    }
+
     // Main method for testing server independently
+    // Usage: GameServer [port] [blocking|nio|virtual]
     public static void main(String[] args) {
-        new Thread(new GameServer(NetworkProtocol.PORT)).start();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : NetworkProtocol.PORT;
+        ServerMode mode = args.length > 1 ? ServerMode.parse(args[1]) : ServerMode.fromProperty();
+        GameServer server = new GameServer(port, mode);
+        // Ctrl-C still writes out queued game results
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        new Thread(server).start();
     }
 }
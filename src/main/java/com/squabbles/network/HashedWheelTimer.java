@@ -0,0 +1,216 @@
+package com.squabbles.network;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-wide timer for short deadlines such as the 10 second turn limit.
+ * One thread advances a wheel of buckets every tick; a deadline sits in the
+ * bucket its expiry hashes to, with a round counter for delays longer than
+ * one revolution. Scheduling and cancelling are O(1): both only touch a
+ * lock-free queue, and the wheel thread does the bucket bookkeeping.
+ * Expired tasks run on the wheel thread, so they must be short and non-blocking.
+ */
+public class HashedWheelTimer {
+    private static final int ST_PENDING = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick = 0; // wheel thread only
+
+    public HashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1; // round up to a power of two
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = threadFactory.newThread(this::runWheel);
+        this.worker.start();
+    }
+
+    /**
+     * A scheduled task that can be cancelled until it fires.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadline; // nanos since startTime
+        private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if this call stopped the task from running
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_PENDING, ST_CANCELLED))
+                return false;
+            pending.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_PENDING, ST_EXPIRED))
+                return;
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Deadlines scheduled and neither fired nor cancelled yet.
+     */
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    // Waits for a tick that is already expiring, so no task runs after this returns
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        if (Thread.currentThread() == worker)
+            return;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWheel() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0)
+                break;
+            removeCancelled();
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long now = System.nanoTime() - startTime;
+            long sleepMs = (deadline - now + 999_999) / 1_000_000;
+            if (sleepMs <= 0)
+                return now;
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                if (!running)
+                    return -1;
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled())
+                continue;
+            long expiryTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+            // Already overdue deadlines go into the current bucket
+            long slot = Math.max(expiryTick, tick);
+            wheel[(int) (slot & mask)].add(timeout);
+        }
+    }
+
+    // Doubly linked list so a cancelled timeout unlinks in O(1); wheel thread only
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline)
+                        timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this)
+                return;
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
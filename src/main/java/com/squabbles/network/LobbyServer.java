@@ -1,61 +1,352 @@
 package com.squabbles.network;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import com.squabbles.logic.Leaderboard;
+import com.squabbles.logic.Ratings;
+
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class LobbyServer {
-    private Queue<ServerClient> matchmakingQueue = new LinkedList<>();
-    private List<GameRoom> activeRooms = new ArrayList<>();
-    private List<ServerClient> connectedClients = new ArrayList<>();
+    private static final long RACE_FILL_MS = Long.getLong("squabbles.race.fillMs", 5000);
+
+    // Joining players land in one of several arrival shards, each with its own small lock,
+    // so a burst of joins doesn't queue up behind one monitor; the Matchmaker drains them
+    // in batches. queuedShard gives O(1) membership and tells removeClient where to look.
+    private final QueueShard[] shards;
+    private final ConcurrentHashMap<ServerClient, Integer> queuedShard = new ConcurrentHashMap<>();
+    private final Set<ServerClient> connectedClients = ConcurrentHashMap.newKeySet();
+    // Clients in the match queue, the race queue or being seated in a room. Adding to this
+    // set is the one gate for every way into a game, so a client can't wait in both queues.
+    private final Set<ServerClient> seeking = ConcurrentHashMap.newKeySet();
+    private final ThreadFactory threadFactory;
+    private final HashedWheelTimer timer;
+    // Built by start(), so the lobby is complete before the matchmaker thread sees it
+    private volatile Matchmaker matchmaker;
+    private final RoomRegistry rooms;
+    // Every server-side bot's moves are timed callbacks on this pool; -Dsquabbles.bot.threads sizes it
+    private final ScheduledThreadPoolExecutor botScheduler;
+    // Runs room mailboxes, one room at a time per room; -Dsquabbles.room.threads sizes it
+    private final ExecutorService roomExecutor;
+    // Null unless rooms run on the fixed-rate tick engine
+    private final TickEngine tickEngine;
+    // Game results are written behind the rooms' backs, batched on one thread,
+    // and then applied to the leaderboard; the same thread updates ratings
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final Ratings ratings = new Ratings();
+    private final StatsWriter statsWriter;
+    // Players waiting for a race room. The matchmaker starts one as soon as it is full, or
+    // once the first racer has waited RACE_FILL_MS and someone else has joined.
+    private final ReentrantLock raceLock = new ReentrantLock();
+    private final LinkedHashSet<ServerClient> raceWaiting = new LinkedHashSet<>();
+
+    public LobbyServer() {
+        this(ServerMode.BLOCKING.threadFactory("game"), newTimer());
+    }
+
+    public LobbyServer(ThreadFactory threadFactory, HashedWheelTimer timer) {
+        this.threadFactory = threadFactory;
+        this.timer = timer;
+        // -Dsquabbles.lobby.shards overrides the default of one shard per core
+        int count = Integer.getInteger("squabbles.lobby.shards", Runtime.getRuntime().availableProcessors());
+        this.shards = new QueueShard[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new QueueShard();
+        }
+        this.rooms = new RoomRegistry(timer);
+        this.roomExecutor = Executors.newFixedThreadPool(
+                Integer.getInteger("squabbles.room.threads", Runtime.getRuntime().availableProcessors()),
+                ServerMode.BLOCKING.threadFactory("room"));
+        this.tickEngine = TickEngine.fromProperties();
+        this.statsWriter = new StatsWriter(ServerMode.BLOCKING.threadFactory("stats-writer"), leaderboard, ratings);
+        this.botScheduler = new ScheduledThreadPoolExecutor(
+                Integer.getInteger("squabbles.bot.threads", Math.max(2, Runtime.getRuntime().availableProcessors() / 2)),
+                ServerMode.BLOCKING.threadFactory("bot"));
+        this.botScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts the matchmaker, the room reaper and the tick engine. Call once, before
+     * accepting players.
+     */
+    public void start() {
+        rooms.start();
+        if (tickEngine != null)
+            tickEngine.start();
+        matchmaker = new Matchmaker(this, ServerMode.BLOCKING.threadFactory("matchmaker"));
+        matchmaker.start();
+    }
+
+    /**
+     * Default wheel for turn deadlines: 100 ms ticks, 512 slots (one revolution is ~51 s).
+     * The wheel always runs on a platform thread since it only sleeps and dispatches.
+     */
+    public static HashedWheelTimer newTimer() {
+        return new HashedWheelTimer(ServerMode.BLOCKING.threadFactory("turn-timer"), 100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * Threads for connection writers, matching the server's mode.
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Server-wide timer every room registers its turn deadlines with.
+     */
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    public ScheduledThreadPoolExecutor getBotScheduler() {
+        return botScheduler;
+    }
+
+    public ExecutorService getRoomExecutor() {
+        return roomExecutor;
+    }
+
+    public TickEngine getTickEngine() {
+        return tickEngine;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    public Ratings getRatings() {
+        return ratings;
+    }
+
+    public StatsWriter getStatsWriter() {
+        return statsWriter;
+    }
+
+    public RoomRegistry getRooms() {
+        return rooms;
+    }
+
+    public int getClientCount() {
+        return connectedClients.size();
+    }
 
-    public synchronized void addClient(ServerClient client) {
+    public int getQueuedCount() {
+        return queuedShard.size();
+    }
+
+    public void addClient(ServerClient client) {
         connectedClients.add(client);
     }
 
-    public synchronized void removeClient(ServerClient client) {
+    public void removeClient(ServerClient client) {
         connectedClients.remove(client);
-        matchmakingQueue.remove(client);
+        Integer index = queuedShard.remove(client);
+        if (index != null) {
+            QueueShard shard = shards[index];
+            shard.lock.lock();
+            try {
+                shard.waiting.remove(client);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        raceLock.lock();
+        try {
+            raceWaiting.remove(client);
+        } finally {
+            raceLock.unlock();
+        }
+        seeking.remove(client);
         // Room cleanup is handled in GameRoom
     }
 
-    public synchronized void joinQueue(ServerClient client) {
-        if (matchmakingQueue.contains(client))
+    // Claims the client for one queue or room; false if it is already waiting or playing.
+    // Rooms set gameRoom before release() runs, so the check after the add can't miss one.
+    private boolean enterLobby(ServerClient client) {
+        if (!seeking.add(client))
+            return false;
+        if (client.getGameRoom() != null || !connectedClients.contains(client)) {
+            seeking.remove(client);
+            return false;
+        }
+        return true;
+    }
+
+    // The clients are seated (or gone); they may queue again once their room lets them go
+    private void release(List<ServerClient> clients) {
+        seeking.removeAll(clients);
+    }
+
+    public void joinRace(ServerClient client) {
+        if (!enterLobby(client))
+            return;
+        raceLock.lock();
+        try {
+            if (!connectedClients.contains(client) || !raceWaiting.add(client)) {
+                seeking.remove(client); // Don't leave them locked out of every queue
+                return;
+            }
+            client.getPlayer().queueJoinTime = System.currentTimeMillis();
+        } finally {
+            raceLock.unlock();
+        }
+        System.out.println("Player " + client.getPlayerName() + " (ID: " + client.getPlayerId() + ") joined race queue.");
+        client.sendMessage(ProtocolMessage.withText(MessageType.JOIN_RACE, "Waiting for racers..."));
+    }
+
+    /**
+     * Starts every race room that is ready. Called from the matchmaker thread only.
+     */
+    void formRaceRooms(long now) {
+        List<List<ServerClient>> ready = new ArrayList<>();
+        raceLock.lock();
+        try {
+            while (raceWaiting.size() >= GameRoom.MAX_RACE_PLAYERS || (raceWaiting.size() >= 2
+                    && now - raceWaiting.iterator().next().getPlayer().queueJoinTime >= RACE_FILL_MS)) {
+                List<ServerClient> racers = new ArrayList<>();
+                Iterator<ServerClient> it = raceWaiting.iterator();
+                while (it.hasNext() && racers.size() < GameRoom.MAX_RACE_PLAYERS) {
+                    racers.add(it.next());
+                    it.remove();
+                }
+                ready.add(racers);
+            }
+        } finally {
+            raceLock.unlock();
+        }
+        // Room setup deals and writes to every racer, so it happens outside the lock
+        for (List<ServerClient> racers : ready) {
+            System.out.println("Race found: " + racers.size() + " players");
+            for (ServerClient racer : racers) {
+                racer.sendMessage(ProtocolMessage.withText(MessageType.GAME_FOUND, racers.size() + " racers"));
+            }
+            GameRoom room = new GameRoom(racers, this, true);
+            release(racers);
+            rooms.register(room);
+            room.startGame();
+        }
+    }
+
+    public void joinQueue(ServerClient client) {
+        if (!enterLobby(client))
             return;
+        int index = Math.floorMod(client.getPlayerId(), shards.length);
+        queuedShard.put(client, index);
 
+        // Match on the rating as of the last written game
+        client.getPlayer().mmr = ratings.get(client.getPlayerName());
+        client.getPlayer().queueJoinTime = System.currentTimeMillis();
         System.out.println("Player " + client.getPlayerName() + " (ID: " + client.getPlayerId() + ") joined queue.");
-        matchmakingQueue.add(client);
-        client.sendMessage(NetworkProtocol.MSG_JOIN_QUEUE + " Waiting for opponent...");
+        client.sendMessage(ProtocolMessage.withText(MessageType.JOIN_QUEUE, "Waiting for opponent..."));
 
-        checkQueue();
+        QueueShard shard = shards[index];
+        shard.lock.lock();
+        try {
+            // removeClient may have run since the put; don't queue a departed client
+            if (!Integer.valueOf(index).equals(queuedShard.get(client))) {
+                seeking.remove(client);
+                return;
+            }
+            shard.waiting.add(client);
+        } finally {
+            shard.lock.unlock();
+        }
+
+        // Matchmaker pairs on its next batch
+    }
+
+    /**
+     * Moves every client that joined since the last call into the given list.
+     * Called from the matchmaker thread only.
+     */
+    void drainArrivals(List<ServerClient> into) {
+        for (QueueShard shard : shards) {
+            shard.lock.lock();
+            try {
+                into.addAll(shard.waiting);
+                shard.waiting.clear();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    boolean isQueued(ServerClient client) {
+        return queuedShard.containsKey(client);
     }
 
-    private void checkQueue() {
-        if (matchmakingQueue.size() >= 2) {
-            ServerClient p1 = matchmakingQueue.poll();
-            ServerClient p2 = matchmakingQueue.poll();
+    /**
+     * Takes a client out of the queue for a match.
+     *
+     * @return false if it already left
+     */
+    boolean claim(ServerClient client) {
+        return queuedShard.remove(client) != null;
+    }
 
-            createGameRoom(p1, p2);
+    // Undoes claim() when the other half of a pair fell through. removeClient drops the
+    // client from connectedClients before the queue, so checking afterwards can't leave a
+    // departed client queued.
+    void unclaim(ServerClient client) {
+        queuedShard.putIfAbsent(client, Math.floorMod(client.getPlayerId(), shards.length));
+        if (!connectedClients.contains(client))
+            queuedShard.remove(client);
+    }
+
+    public void stop() {
+        Matchmaker running = matchmaker;
+        if (running != null)
+            running.stop();
+        rooms.stop();
+        botScheduler.shutdownNow();
+        awaitStopped(botScheduler);
+        if (tickEngine != null)
+            tickEngine.stop();
+        // Room actions still running can record results; let them finish before the final flush
+        roomExecutor.shutdown();
+        awaitStopped(roomExecutor);
+        statsWriter.stop();
+    }
+
+    static void awaitStopped(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+                System.out.println("Executor still busy after 10s; stopping anyway");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void createGameRoom(ServerClient p1, ServerClient p2) {
+    // Runs outside every lobby lock: room setup deals cards and writes to both players
+    void createGameRoom(ServerClient p1, ServerClient p2) {
         System.out.println("Match found: " + p1.getPlayerName() + " vs " + p2.getPlayerName());
 
-        p1.sendMessage(NetworkProtocol.MSG_GAME_FOUND + " " + p2.getPlayerName());
-        p2.sendMessage(NetworkProtocol.MSG_GAME_FOUND + " " + p1.getPlayerName());
+        p1.sendMessage(ProtocolMessage.withText(MessageType.GAME_FOUND, p2.getPlayerName()));
+        p2.sendMessage(ProtocolMessage.withText(MessageType.GAME_FOUND, p1.getPlayerName()));
 
         List<ServerClient> players = new ArrayList<>();
         players.add(p1);
         players.add(p2);
 
-        GameRoom room = new GameRoom(players);
-        activeRooms.add(room);
+        GameRoom room = new GameRoom(players, this);
+        release(players);
+        rooms.register(room);
         room.startGame();
     }
 
-    public synchronized void startBotGame(ServerClient player, int difficulty) {
+    public void startBotGame(ServerClient player, int difficulty) {
+        if (!enterLobby(player))
+            return;
         System.out.println("Starting game for Player " + player.getPlayerName() + " with difficulty " + difficulty);
 
         List<ServerClient> players = new ArrayList<>();
@@ -67,8 +358,14 @@ public class LobbyServer {
             players.add(bot);
         }
 
-        GameRoom room = new GameRoom(players);
-        activeRooms.add(room);
+        GameRoom room = new GameRoom(players, this);
+        release(players);
+        rooms.register(room);
         room.startGame();
     }
+
+    private static final class QueueShard {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashSet<ServerClient> waiting = new LinkedHashSet<>();
+    }
 }
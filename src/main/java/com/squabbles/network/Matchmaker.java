@@ -0,0 +1,180 @@
+package com.squabbles.network;
+
+import com.squabbles.model.Player;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pairs queued players by skill. Joins only drop clients into the lobby's arrival
+ * shards; every interval this thread drains them into an index of MMR buckets and
+ * lets the longest-waiting players pick first, each taking the closest-rated
+ * opponent inside a window that widens the longer they have waited. The index is
+ * only touched by this thread, so it needs no locking.
+ */
+public class Matchmaker {
+    // Bucket width in rating points; a lookup only visits buckets the window overlaps
+    private static final int BUCKET_WIDTH = 50;
+    private static final long INTERVAL_MS = Long.getLong("squabbles.matchmaking.intervalMs", 250);
+    private static final int BASE_WINDOW = Integer.getInteger("squabbles.matchmaking.baseWindow", 100);
+    private static final int WIDEN_PER_SECOND = Integer.getInteger("squabbles.matchmaking.widenPerSecond", 50);
+
+    private static final LongAdder MATCHES = ServerMetrics.counter("matchmaking.matches");
+    private static final LongAdder PLAYERS_MATCHED = ServerMetrics.counter("matchmaking.playersMatched");
+    private static final LongAdder WAIT_MS = ServerMetrics.counter("matchmaking.waitMsTotal");
+    private static final LongAdder MMR_SPREAD = ServerMetrics.counter("matchmaking.mmrSpreadTotal");
+
+    static {
+        ServerMetrics.gauge("matchmaking.avgWaitMs",
+                () -> PLAYERS_MATCHED.sum() == 0 ? 0 : WAIT_MS.sum() / PLAYERS_MATCHED.sum());
+        ServerMetrics.gauge("matchmaking.avgMmrSpread",
+                () -> MATCHES.sum() == 0 ? 0 : MMR_SPREAD.sum() / MATCHES.sum());
+    }
+
+    private final TreeMap<Integer, LinkedHashSet<Entry>> buckets = new TreeMap<>();
+    // Same entries in queue order, so the longest waiters pick first
+    private final LinkedHashSet<Entry> byAge = new LinkedHashSet<>();
+    private final LobbyServer lobby;
+    private final ThreadFactory threadFactory;
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    public Matchmaker(LobbyServer lobby, ThreadFactory threadFactory) {
+        this.lobby = lobby;
+        this.threadFactory = threadFactory;
+    }
+
+    public void start() {
+        thread = threadFactory.newThread(this::run);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread worker = thread;
+        if (worker != null)
+            worker.interrupt();
+    }
+
+    // Rating is copied in so a rating change can't strand an entry in the wrong bucket
+    private static final class Entry {
+        final ServerClient client;
+        final Player player;
+        final int mmr;
+
+        Entry(ServerClient client) {
+            this.client = client;
+            this.player = client.getPlayer();
+            this.mmr = player.mmr;
+        }
+    }
+
+    private void run() {
+        List<ServerClient> arrivals = new ArrayList<>();
+        while (running) {
+            try {
+                Thread.sleep(INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                lobby.drainArrivals(arrivals);
+                for (ServerClient client : arrivals) {
+                    add(new Entry(client));
+                }
+                arrivals.clear();
+                matchBatch(System.currentTimeMillis());
+                lobby.formRaceRooms(System.currentTimeMillis());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void add(Entry entry) {
+        buckets.computeIfAbsent(bucketOf(entry.mmr), k -> new LinkedHashSet<>()).add(entry);
+        byAge.add(entry);
+    }
+
+    private void remove(Entry entry) {
+        byAge.remove(entry);
+        int bucket = bucketOf(entry.mmr);
+        LinkedHashSet<Entry> entries = buckets.get(bucket);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty())
+                buckets.remove(bucket);
+        }
+    }
+
+    private void matchBatch(long now) {
+        for (Entry entry : new ArrayList<>(byAge)) {
+            if (!byAge.contains(entry))
+                continue; // Taken as someone's opponent earlier in this batch
+            if (!lobby.isQueued(entry.client)) {
+                remove(entry); // Disconnected since it joined
+                continue;
+            }
+            long waitedSeconds = (now - entry.player.queueJoinTime) / 1000;
+            int window = (int) Math.min(Integer.MAX_VALUE / 2, BASE_WINDOW + WIDEN_PER_SECOND * waitedSeconds);
+            Entry opponent = nearest(entry, window);
+            if (opponent == null)
+                continue;
+
+            if (!lobby.claim(opponent.client)) {
+                remove(opponent);
+                continue;
+            }
+            if (!lobby.claim(entry.client)) {
+                lobby.unclaim(opponent.client);
+                remove(entry);
+                continue;
+            }
+            remove(entry);
+            remove(opponent);
+            MATCHES.increment();
+            PLAYERS_MATCHED.add(2);
+            WAIT_MS.add((now - entry.player.queueJoinTime) + (now - opponent.player.queueJoinTime));
+            MMR_SPREAD.add(Math.abs(entry.mmr - opponent.mmr));
+            lobby.createGameRoom(entry.client, opponent.client);
+        }
+    }
+
+    // Closest rating within the window. Walks buckets outward from the entry's own in both
+    // directions and stops on each side once a bucket is too far to beat the best so far.
+    private Entry nearest(Entry entry, int window) {
+        int home = bucketOf(entry.mmr);
+        NavigableMap<Integer, LinkedHashSet<Entry>> above = buckets.subMap(home, true,
+                bucketOf(entry.mmr + window), true);
+        NavigableMap<Integer, LinkedHashSet<Entry>> below = buckets.subMap(bucketOf(entry.mmr - window), true,
+                home, false).descendingMap();
+
+        Entry best = null;
+        int bestDiff = window + 1;
+        for (NavigableMap<Integer, LinkedHashSet<Entry>> side : List.of(above, below)) {
+            for (Map.Entry<Integer, LinkedHashSet<Entry>> bucket : side.entrySet()) {
+                int minGap = (Math.abs(bucket.getKey() - home) - 1) * BUCKET_WIDTH;
+                if (minGap >= bestDiff)
+                    break;
+                for (Entry candidate : bucket.getValue()) {
+                    int diff = Math.abs(candidate.mmr - entry.mmr);
+                    if (candidate != entry && diff < bestDiff) {
+                        best = candidate;
+                        bestDiff = diff;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int bucketOf(int mmr) {
+        return Math.floorDiv(mmr, BUCKET_WIDTH);
+    }
+}
@@ -0,0 +1,76 @@
+package com.squabbles.network;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opcode and field layout of every NetworkProtocol message.
+ * Layout letters, in wire order: I = int, B = boolean, C = card, T = trailing text.
+ * Ints and booleans always come before cards, and text is always last.
+ * New types go at the end: the opcode is derived from declaration order.
+ */
+public enum MessageType {
+    WELCOME(NetworkProtocol.MSG_WELCOME, "IT"), // playerId, capabilities
+    START_GAME(NetworkProtocol.MSG_START_GAME, ""),
+    UPDATE_CARDS(NetworkProtocol.MSG_UPDATE_CARDS, "CC"), // center card, player card
+    MATCH_ATTEMPT(NetworkProtocol.MSG_MATCH_ATTEMPT, "II"), // iconId, sequence (optional)
+    MATCH_RESULT(NetworkProtocol.MSG_MATCH_RESULT, "BIIT"), // success, score, lives, reason
+    GAME_OVER(NetworkProtocol.MSG_GAME_OVER, "T"),
+    PLAYER_JOINED(NetworkProtocol.MSG_PLAYER_JOINED, "T"),
+    REQUEST_STATE(NetworkProtocol.MSG_REQUEST_STATE, ""),
+    END_GAME(NetworkProtocol.MSG_END_GAME, ""),
+    JOIN_QUEUE(NetworkProtocol.MSG_JOIN_QUEUE, "T"), // name (client) or status (server)
+    PLAY_BOT(NetworkProtocol.MSG_PLAY_BOT, "IT"), // difficulty, name
+    GAME_FOUND(NetworkProtocol.MSG_GAME_FOUND, "T"),
+    OPPONENT_DISCONNECTED(NetworkProtocol.MSG_OPPONENT_DISCONNECTED, "T"),
+    TURN_UPDATE(NetworkProtocol.MSG_TURN_UPDATE, "I"), // playerId
+    ERROR(NetworkProtocol.MSG_ERROR, "T"),
+    PROTOCOL(NetworkProtocol.MSG_PROTOCOL, "T"), // requested / accepted capabilities
+    UPDATE_CARD_IDS(NetworkProtocol.MSG_UPDATE_CARD_IDS, "III"), // center card, player card, icon order seed
+    ACK(NetworkProtocol.MSG_ACK, "IT"), // sequence, status
+    JOIN_RACE(NetworkProtocol.MSG_JOIN_RACE, "T"), // name (client) or status (server)
+    STALE_CLAIM(NetworkProtocol.MSG_STALE_CLAIM, "I"), // center version
+    LEADERBOARD(NetworkProtocol.MSG_LEADERBOARD, "II"), // count (client) or entries, total players (server)
+    LEADERBOARD_ENTRY(NetworkProtocol.MSG_LEADERBOARD_ENTRY, "IIIIT"), // rank, score, wins, losses, name
+    RANK(NetworkProtocol.MSG_RANK, "III"), // rank, score, total players (server only)
+    RECORD(NetworkProtocol.MSG_RECORD, "II"); // wins, losses (server only)
+
+    private static final Map<String, MessageType> BY_KEYWORD = new HashMap<>();
+    private static final MessageType[] BY_OPCODE = new MessageType[values().length + 1];
+
+    static {
+        for (MessageType type : values()) {
+            BY_KEYWORD.put(type.keyword, type);
+            BY_OPCODE[type.opcode()] = type;
+        }
+    }
+
+    private final String keyword;
+    private final String layout;
+
+    MessageType(String keyword, String layout) {
+        this.keyword = keyword;
+        this.layout = layout;
+    }
+
+    public String keyword() {
+        return keyword;
+    }
+
+    public String layout() {
+        return layout;
+    }
+
+    // Opcodes are 1-based so a zero byte on the wire is never a valid message
+    public int opcode() {
+        return ordinal() + 1;
+    }
+
+    public static MessageType fromKeyword(String keyword) {
+        return BY_KEYWORD.get(keyword);
+    }
+
+    public static MessageType fromOpcode(int opcode) {
+        return opcode > 0 && opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+    }
+}
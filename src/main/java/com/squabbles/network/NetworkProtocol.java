@@ -4,7 +4,8 @@ public class NetworkProtocol {
     public static final String MSG_WELCOME = "WELCOME"; // + playerId
     public static final String MSG_START_GAME = "START_GAME";
     public static final String MSG_UPDATE_CARDS = "UPDATE_CARDS"; // + card1Data + card2Data
-    public static final String MSG_MATCH_ATTEMPT = "MATCH_ATTEMPT"; // + iconId
+    public static final String MSG_UPDATE_CARD_IDS = "UPDATE_CARD_IDS"; // + centerCardId + playerCardId + iconOrderSeed
+    public static final String MSG_MATCH_ATTEMPT = "MATCH_ATTEMPT"; // + iconId [+ sequence]
     public static final String MSG_MATCH_RESULT = "MATCH_RESULT"; // + success(boolean) + scoreUpdate
     public static final String MSG_GAME_OVER = "GAME_OVER"; // + winner
     public static final String MSG_PLAYER_JOINED = "PLAYER_JOINED";
@@ -15,9 +16,70 @@ public class NetworkProtocol {
 
     // Matchmaking & Lobby
     public static final String MSG_JOIN_QUEUE = "JOIN_QUEUE";
-    public static final String MSG_PLAY_BOT = "PLAY_BOT"; // + difficulty (SIMPLE/ADVANCED)
+    public static final String MSG_PLAY_BOT = "PLAY_BOT"; // + difficulty (0 = no bot, 1 simple, 2 advanced, 3 perfect) + name
     public static final String MSG_GAME_FOUND = "GAME_FOUND"; // + opponentName
     public static final String MSG_OPPONENT_DISCONNECTED = "OPPONENT_DISCONNECTED";
     public static final String MSG_TURN_UPDATE = "TURN_UPDATE"; // + playerId (whose turn it is)
     public static final String MSG_ERROR = "ERROR";
+    // Answer to a sequenced MATCH_ATTEMPT: + sequence + status. Sequences start at 1 and must
+    // increase per connection; a resend of the last one is acknowledged again but not reapplied.
+    // STALE covers both an out-of-order sequence and a race claim on a center already taken.
+    public static final String MSG_ACK = "ACK";
+    public static final String ACK_APPLIED = "APPLIED";
+    public static final String ACK_DUPLICATE = "DUPLICATE";
+    public static final String ACK_STALE = "STALE";
+
+    // Race rooms: everyone plays at once (TURN_UPDATE RACE_TURN), and a correct claim that
+    // lost to a faster one is answered STALE_CLAIM + current center version, with no penalty
+    public static final String MSG_JOIN_RACE = "JOIN_RACE"; // + name
+    public static final String MSG_STALE_CLAIM = "STALE_CLAIM"; // + center version
+    // Player IDs start at 0, so the race sentinel has to be negative
+    public static final int RACE_TURN = -2;
+
+    // Leaderboard: LEADERBOARD count is answered LEADERBOARD entries totalPlayers followed by
+    // that many LEADERBOARD_ENTRY rank score wins losses name. RANK is answered
+    // RANK rank score totalPlayers for the asking player (rank 0 = no results yet).
+    public static final String MSG_LEADERBOARD = "LEADERBOARD";
+    public static final String MSG_LEADERBOARD_ENTRY = "LEADERBOARD_ENTRY";
+    public static final String MSG_RANK = "RANK";
+    public static final int LEADERBOARD_MAX = 100;
+    // Sent once a finished game's result is written: RECORD wins losses, the player's new totals
+    public static final String MSG_RECORD = "RECORD";
+
+    // Wire negotiation: WELCOME advertises capabilities, the client answers
+    // PROTOCOL with the ones it wants and the server acknowledges with the
+    // accepted list. BINARY switches both sides to length-prefixed frames
+    // (BinaryCodec) after the acknowledgement line.
+    public static final String MSG_PROTOCOL = "PROTOCOL"; // + capabilities
+    public static final String CAP_BINARY = "BINARY";
+    // UPDATE_CARD_IDS instead of UPDATE_CARDS; only requested when the client's
+    // CanonicalDeck hash equals the server's DECK=<hash> capability
+    public static final String CAP_CARD_IDS = "CARD_IDS";
+    public static final String CAP_DECK_PREFIX = "DECK=";
+
+    /**
+     * Checks a space separated capability list (WELCOME / PROTOCOL text) for one entry.
+     */
+    public static boolean hasCapability(String capabilities, String capability) {
+        if (capabilities == null)
+            return false;
+        for (String entry : capabilities.split(" ")) {
+            if (entry.equals(capability))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Value of a "KEY=value" capability entry, or null when absent.
+     */
+    public static String capabilityValue(String capabilities, String prefix) {
+        if (capabilities == null)
+            return null;
+        for (String entry : capabilities.split(" ")) {
+            if (entry.startsWith(prefix))
+                return entry.substring(prefix.length());
+        }
+        return null;
+    }
 }
@@ -0,0 +1,126 @@
+package com.squabbles.network;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntSupplier;
+
+/**
+ * A single selector thread servicing many NioServerClient connections.
+ * Work coming from other threads is queued with execute() and run between
+ * selects, so channel and key state is only ever touched on this thread.
+ */
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final LobbyServer lobby;
+    private final IntSupplier idGenerator;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public NioEventLoop(LobbyServer lobby, IntSupplier idGenerator) throws IOException {
+        this.selector = Selector.open();
+        this.lobby = lobby;
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Hands a freshly accepted channel to this loop.
+     */
+    public void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                NioServerClient client = new NioServerClient(channel, idGenerator.getAsInt(), lobby, this);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, client);
+                client.setKey(key);
+                lobby.addClient(client);
+                client.sendWelcome();
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already closing
+                }
+            }
+        });
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioServerClient client = (NioServerClient) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            client.handleRead();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.handleWrite();
+                        }
+                    } catch (IOException e) {
+                        client.disconnect();
+                    } catch (Exception e) {
+                        // A bad message must not take down every connection on this loop
+                        e.printStackTrace();
+                        client.disconnect();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running)
+                e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void closeAll() {
+        if (!selector.isOpen())
+            return;
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof NioServerClient) {
+                ((NioServerClient) key.attachment()).disconnect();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,148 @@
+package com.squabbles.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ServerClient backed by a non-blocking SocketChannel.
+ * All reads and writes happen on the owning NioEventLoop thread; other threads
+ * (game rooms, bots) only fill the outbound queue and ask the loop to flush.
+ */
+public class NioServerClient extends ServerClient {
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private SelectionKey key;
+
+    // Holds at most one partial line or frame between reads
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BinaryCodec.MAX_FRAME + 16);
+
+    // Frames taken off the outbound queue but not yet fully written; loop thread only
+    private final ArrayDeque<ByteBuffer> inFlight = new ArrayDeque<>();
+    private final List<byte[]> drained = new ArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    public NioServerClient(SocketChannel channel, int playerId, LobbyServer lobby, NioEventLoop loop) {
+        super(null, playerId, lobby); // No blocking socket, the event loop owns the channel
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    @Override
+    protected void onOutboundReady() {
+        if (channel.isOpen() && flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    @Override
+    protected void dropConnection() {
+        // Channel and key belong to the loop thread
+        loop.execute(this::disconnect);
+    }
+
+    // Called on the loop thread when the channel is readable
+    void handleRead() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            disconnect();
+            return;
+        }
+        readBuffer.flip();
+        try {
+            // Re-check the mode per message: a PROTOCOL line switches the rest of the buffer to frames
+            while (channel.isOpen()) {
+                if (isBinary()) {
+                    ProtocolMessage message = BinaryCodec.tryDecode(readBuffer);
+                    if (message == null)
+                        break;
+                    processMessage(message);
+                } else {
+                    String line = nextLine();
+                    if (line == null)
+                        break;
+                    processMessage(line);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Player " + getPlayerId() + " sent a malformed frame, disconnecting.");
+            disconnect();
+            return;
+        }
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            System.out.println("Player " + getPlayerId() + " sent an oversized line, disconnecting.");
+            disconnect();
+        }
+    }
+
+    private String nextLine() {
+        int start = readBuffer.position();
+        for (int i = start; i < readBuffer.limit(); i++) {
+            if (readBuffer.get(i) == '\n') {
+                int end = i > start && readBuffer.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] bytes = new byte[end - start];
+                readBuffer.get(start, bytes);
+                readBuffer.position(i + 1);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // Called on the loop thread when the channel is writable again
+    void handleWrite() throws IOException {
+        flush();
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (key == null || !key.isValid())
+            return;
+        try {
+            getOutbound().pollAll(drained);
+            for (byte[] frame : drained) {
+                inFlight.add(ByteBuffer.wrap(frame));
+            }
+            drained.clear();
+            if (!inFlight.isEmpty()) {
+                // One gathering write for everything queued since the last flush
+                long written = channel.write(inFlight.toArray(new ByteBuffer[0]));
+                getOutbound().release(written);
+                while (!inFlight.isEmpty() && !inFlight.peek().hasRemaining()) {
+                    inFlight.poll();
+                }
+            }
+            if (!inFlight.isEmpty()) {
+                // Socket send buffer is full, wait for OP_WRITE
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    @Override
+    protected void closeConnection() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.squabbles.network;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded per-connection queue of encoded messages waiting to hit the socket.
+ * Producers (room threads) never block: a batch that would push the unsent
+ * bytes over the high-water mark is refused so the caller can deal with the
+ * slow consumer. Bytes stay counted until the writer releases them after the
+ * socket accepted them.
+ */
+public class OutboundQueue {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private final long highWaterBytes;
+    private long unsentBytes = 0;
+    private boolean closed = false;
+
+    public OutboundQueue(long highWaterBytes) {
+        this.highWaterBytes = highWaterBytes;
+    }
+
+    /**
+     * Queues all frames or none of them.
+     *
+     * @return false if the batch would exceed the high-water mark
+     */
+    public boolean offerAll(List<byte[]> batch) {
+        long size = 0;
+        for (byte[] frame : batch) {
+            size += frame.length;
+        }
+        lock.lock();
+        try {
+            if (closed)
+                return true; // Connection is going away, nothing to report
+            if (unsentBytes + size > highWaterBytes)
+                return false;
+            frames.addAll(batch);
+            unsentBytes += size;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for frames and moves all of them into the given list.
+     *
+     * @return false once the queue is closed and empty
+     */
+    public boolean takeAll(List<byte[]> into) throws InterruptedException {
+        lock.lock();
+        try {
+            while (frames.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (frames.isEmpty())
+                return false;
+            into.addAll(frames);
+            frames.clear();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Non-blocking variant of takeAll for selector loops.
+     */
+    public void pollAll(List<byte[]> into) {
+        lock.lock();
+        try {
+            into.addAll(frames);
+            frames.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the writer once bytes have been accepted by the socket.
+     */
+    public void release(long bytes) {
+        lock.lock();
+        try {
+            unsentBytes -= bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long unsentBytes() {
+        lock.lock();
+        try {
+            return unsentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            frames.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
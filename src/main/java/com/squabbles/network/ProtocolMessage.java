@@ -0,0 +1,222 @@
+package com.squabbles.network;
+
+import java.util.Arrays;
+
+/**
+ * A decoded protocol message, independent of how it travelled (text line or
+ * binary frame). Fields follow the MessageType layout: ints (booleans stored as
+ * 0/1), then cards, then an optional trailing text.
+ */
+public class ProtocolMessage {
+    private static final int[] NO_INTS = new int[0];
+    private static final int[][] NO_ICONS = new int[0][];
+
+    private final MessageType type;
+    private final String keyword;
+    private final int[] ints;
+    private final int[] cardIds; // 0 = no card
+    private final int[][] cardIcons;
+    private final String text;
+
+    public ProtocolMessage(MessageType type, int[] ints, int[] cardIds, int[][] cardIcons, String text) {
+        this(type, type.keyword(), ints, cardIds, cardIcons, text);
+    }
+
+    private ProtocolMessage(MessageType type, String keyword, int[] ints, int[] cardIds, int[][] cardIcons,
+            String text) {
+        this.type = type;
+        this.keyword = keyword;
+        this.ints = ints;
+        this.cardIds = cardIds;
+        this.cardIcons = cardIcons;
+        this.text = text;
+    }
+
+    public static ProtocolMessage of(MessageType type, int... ints) {
+        return new ProtocolMessage(type, ints, NO_INTS, NO_ICONS, null);
+    }
+
+    public static ProtocolMessage withText(MessageType type, String text, int... ints) {
+        return new ProtocolMessage(type, ints, NO_INTS, NO_ICONS, text);
+    }
+
+    // ACK sequence status
+    public static ProtocolMessage ack(long sequence, String status) {
+        return withText(MessageType.ACK, status, (int) sequence);
+    }
+
+    /**
+     * Parses a legacy space separated line, e.g. "MATCH_RESULT true 3 4 Time's up!".
+     * Missing trailing fields are simply absent; unknown keywords keep their text.
+     *
+     * @throws IllegalArgumentException if a numeric field or card is malformed
+     */
+    public static ProtocolMessage parse(String line) {
+        int space = line.indexOf(' ');
+        String keyword = space < 0 ? line : line.substring(0, space);
+        String rest = space < 0 ? "" : line.substring(space + 1);
+        MessageType type = MessageType.fromKeyword(keyword);
+        if (type == null) {
+            return new ProtocolMessage(null, keyword, NO_INTS, NO_INTS, NO_ICONS, rest.isEmpty() ? null : rest);
+        }
+
+        String layout = type.layout();
+        int intFields = 0;
+        int cardFields = 0;
+        for (int i = 0; i < layout.length(); i++) {
+            char field = layout.charAt(i);
+            if (field == 'I' || field == 'B')
+                intFields++;
+            else if (field == 'C')
+                cardFields++;
+        }
+        int[] ints = intFields == 0 ? NO_INTS : new int[intFields];
+        int[] cardIds = cardFields == 0 ? NO_INTS : new int[cardFields];
+        int[][] cardIcons = cardFields == 0 ? NO_ICONS : new int[cardFields][];
+        String text = null;
+
+        int intCount = 0;
+        int cardCount = 0;
+        int pos = 0;
+        for (int i = 0; i < layout.length() && pos < rest.length(); i++) {
+            char field = layout.charAt(i);
+            if (field == 'T') {
+                text = rest.substring(pos);
+                break;
+            }
+            int end = rest.indexOf(' ', pos);
+            if (end < 0)
+                end = rest.length();
+            String token = rest.substring(pos, end);
+            pos = end + 1;
+
+            if (field == 'I') {
+                ints[intCount++] = Integer.parseInt(token);
+            } else if (field == 'B') {
+                ints[intCount++] = Boolean.parseBoolean(token) ? 1 : 0;
+            } else {
+                parseCard(token, cardIds, cardIcons, cardCount++);
+            }
+        }
+        if (intCount < ints.length) {
+            ints = Arrays.copyOf(ints, intCount);
+        }
+        return new ProtocolMessage(type, keyword, ints, cardIds, cardIcons, text);
+    }
+
+    // Card format: ID:Icon1,Icon2,... (trailing comma allowed) or "null"
+    private static void parseCard(String token, int[] cardIds, int[][] cardIcons, int index) {
+        if (token.equals("null"))
+            return;
+        int colon = token.indexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("Malformed card: " + token);
+        cardIds[index] = Integer.parseInt(token.substring(0, colon));
+        String[] iconIds = token.substring(colon + 1).split(",");
+        int[] icons = new int[iconIds.length];
+        int count = 0;
+        for (String iconId : iconIds) {
+            if (!iconId.isEmpty())
+                icons[count++] = Integer.parseInt(iconId);
+        }
+        cardIcons[index] = count == icons.length ? icons : Arrays.copyOf(icons, count);
+    }
+
+    /**
+     * Formats the message as a legacy text line (without the newline).
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder(keyword);
+        if (type == null) {
+            if (text != null)
+                sb.append(' ').append(text);
+            return sb.toString();
+        }
+        String layout = type.layout();
+        int intIndex = 0;
+        int cardIndex = 0;
+        for (int i = 0; i < layout.length(); i++) {
+            char field = layout.charAt(i);
+            if (field == 'I') {
+                if (intIndex < ints.length)
+                    sb.append(' ').append(ints[intIndex++]);
+            } else if (field == 'B') {
+                if (intIndex < ints.length)
+                    sb.append(' ').append(ints[intIndex++] != 0);
+            } else if (field == 'C') {
+                sb.append(' ');
+                appendCard(sb, cardIndex++);
+            } else if (text != null) {
+                sb.append(' ').append(text);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void appendCard(StringBuilder sb, int index) {
+        if (index >= cardIds.length || cardIds[index] == 0) {
+            sb.append("null");
+            return;
+        }
+        sb.append(cardIds[index]).append(':');
+        for (int icon : cardIcons[index]) {
+            sb.append(icon).append(',');
+        }
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public boolean is(String keyword) {
+        return this.keyword.equals(keyword);
+    }
+
+    public int intCount() {
+        return ints.length;
+    }
+
+    public int getInt(int index) {
+        return ints[index];
+    }
+
+    public int getInt(int index, int defaultValue) {
+        return index < ints.length ? ints[index] : defaultValue;
+    }
+
+    public boolean getBoolean(int index) {
+        return ints[index] != 0;
+    }
+
+    int[] ints() {
+        return ints;
+    }
+
+    public int cardCount() {
+        return cardIds.length;
+    }
+
+    /**
+     * @return the card ID, or 0 when the slot holds no card
+     */
+    public int getCardId(int index) {
+        return cardIds[index];
+    }
+
+    public int[] getCardIcons(int index) {
+        return cardIcons[index];
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,95 @@
+package com.squabbles.network;
+
+import com.squabbles.logic.CanonicalDeck;
+import com.squabbles.model.Card;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The center card of a race room, where every player plays at once. A claim is
+ * decided on the claiming player's own thread: a correct claim tries to swap in
+ * its card with a compare-and-set on the center version, so only the first of
+ * several simultaneous claims wins and the others find out straight away,
+ * without queueing behind the room.
+ */
+public class RaceBoard {
+    public enum Claim {
+        WON, // Center replaced by the player's card; the room still has to score it
+        STALE, // Right for a center that has since been taken
+        WRONG
+    }
+
+    private static final LongAdder CLAIMS = ServerMetrics.counter("race.claims");
+    private static final LongAdder WINS = ServerMetrics.counter("race.wins");
+    private static final LongAdder STALE = ServerMetrics.counter("race.staleClaims");
+    private static final LongAdder LOST_CAS = ServerMetrics.counter("race.casFailures");
+
+    // How many taken centers a late claim is still recognised against
+    private static final int HISTORY = 8;
+
+    // Immutable, so one compare-and-set moves card, history and version together
+    private static final class Center {
+        final Card card;
+        final int[] taken; // IDs of the cards that were center before, newest first
+        final int version;
+
+        Center(Card card, int[] taken, int version) {
+            this.card = card;
+            this.taken = taken;
+            this.version = version;
+        }
+
+        Center next(Card card) {
+            int[] history = new int[Math.min(HISTORY, taken.length + 1)];
+            history[0] = this.card.getId();
+            System.arraycopy(taken, 0, history, 1, history.length - 1);
+            return new Center(card, history, version + 1);
+        }
+    }
+
+    private final CanonicalDeck canonical;
+    private final AtomicReference<Center> center;
+
+    public RaceBoard(CanonicalDeck canonical, Card first) {
+        this.canonical = canonical;
+        this.center = new AtomicReference<>(new Center(first, new int[0], 0));
+    }
+
+    public Card getCenter() {
+        return center.get().card;
+    }
+
+    public int getVersion() {
+        return center.get().version;
+    }
+
+    public Claim claim(Card playerCard, int iconId) {
+        CLAIMS.increment();
+        Center seen = center.get();
+        // A winner's card stays the center until the room deals them a new one, and an icon
+        // that isn't on the player's card was picked from the card they held before that
+        if (playerCard == null || playerCard.getId() == seen.card.getId() || !playerCard.hasIcon(iconId)) {
+            STALE.increment();
+            return Claim.STALE;
+        }
+        if (iconId == canonical.sharedIcon(playerCard.getId(), seen.card.getId())) {
+            if (center.compareAndSet(seen, seen.next(playerCard))) {
+                WINS.increment();
+                return Claim.WON;
+            }
+            // Someone else's claim landed between our read and our swap
+            LOST_CAS.increment();
+            STALE.increment();
+            return Claim.STALE;
+        }
+        // Matches a card that has since been taken: the player was right, only late
+        for (int taken : seen.taken) {
+            if (taken != playerCard.getId() && iconId == canonical.sharedIcon(playerCard.getId(), taken)) {
+                STALE.increment();
+                return Claim.STALE;
+            }
+        }
+        return Claim.WRONG;
+    }
+}
@@ -0,0 +1,87 @@
+package com.squabbles.network;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Every room between construction and close, keyed by room ID.
+ * Rooms unregister themselves when they close; a periodic reaper on the
+ * shared timer closes rooms whose human players are all gone or that have
+ * seen no activity for squabbles.rooms.idleTimeoutSec (default 300).
+ */
+public class RoomRegistry {
+    private static final long REAP_INTERVAL_SEC = 30;
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.SECONDS
+            .toMillis(Long.getLong("squabbles.rooms.idleTimeoutSec", 300));
+
+    private static final LongAdder CREATED = ServerMetrics.counter("rooms.created");
+    private static final LongAdder FINISHED = ServerMetrics.counter("rooms.finished");
+    private static final LongAdder REAPED = ServerMetrics.counter("rooms.reaped");
+
+    private final ConcurrentHashMap<Long, GameRoom> rooms = new ConcurrentHashMap<>();
+    private final HashedWheelTimer timer;
+    private volatile boolean running = true;
+
+    public RoomRegistry(HashedWheelTimer timer) {
+        this.timer = timer;
+        ServerMetrics.gauge("rooms.live", rooms::size);
+        ServerMetrics.gauge("rooms.running", () -> count(GameRoom.State.RUNNING));
+        ServerMetrics.gauge("rooms.mailboxDepth.max",
+                () -> rooms.values().stream().mapToInt(GameRoom::getMailboxDepth).max().orElse(0));
+        ServerMetrics.gauge("rooms.mailboxDepth.total",
+                () -> rooms.values().stream().mapToInt(GameRoom::getMailboxDepth).sum());
+    }
+
+    /**
+     * Starts the periodic reap.
+     */
+    public void start() {
+        scheduleReap();
+    }
+
+    public void register(GameRoom room) {
+        rooms.put(room.getId(), room);
+        CREATED.increment();
+    }
+
+    /**
+     * Called by a room when it closes. Safe to call more than once.
+     */
+    public void release(GameRoom room) {
+        if (rooms.remove(room.getId(), room))
+            FINISHED.increment();
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private long count(GameRoom.State state) {
+        return rooms.values().stream().filter(r -> r.getState() == state).count();
+    }
+
+    private void scheduleReap() {
+        if (running)
+            timer.schedule(this::reap, REAP_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    // Runs on the timer thread; abandoning a room only posts to its mailbox
+    private void reap() {
+        long idleBefore = System.currentTimeMillis() - IDLE_TIMEOUT_MS;
+        for (GameRoom room : rooms.values()) {
+            if (room.getState() == GameRoom.State.FINISHED || !room.hasConnectedHumans()
+                    || room.getLastActivity() < idleBefore) {
+                System.out.println("Reaping room " + room.getId() + " (" + room.getState() + ")");
+                room.abandon();
+                release(room);
+                REAPED.increment();
+            }
+        }
+        scheduleReap();
+    }
+}
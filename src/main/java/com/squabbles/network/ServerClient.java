@@ -1,34 +1,79 @@
 package com.squabbles.network;
 
+import com.squabbles.logic.CanonicalDeck;
+import com.squabbles.logic.Leaderboard;
 import com.squabbles.model.Card;
 import com.squabbles.model.Icon;
+import com.squabbles.model.Player;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ServerClient implements Runnable {
 
     private Socket socket;
-    private PrintWriter out;
-    private Scanner in;
+    private OutputStream out;
+    private InputStream in;
     private int playerId;
-    private Card currentCard;
+    private volatile Card currentCard; // Read by race claims on this client's own thread
     private int score = 0;
     private LobbyServer lobby;
-    private GameRoom gameRoom;
-    private boolean connected = true;
+    private volatile GameRoom gameRoom;
+    private volatile boolean connected = true;
     private long lastActionTime = 0;
+    // Not a monitor: a virtual thread blocked in a socket write must not pin its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Set once the client has negotiated binary frames (see NetworkProtocol.MSG_PROTOCOL)
+    private volatile boolean binary = false;
+    // Set once the client has confirmed it holds the same CanonicalDeck
+    private volatile boolean cardIdUpdates = false;
+    // Outbound batching state, guarded by writeLock
+    private int batchDepth = 0;
+    private final List<byte[]> pending = new ArrayList<>();
+    // Encoded messages handed off by room threads, written to the socket by the writer
+    private final OutboundQueue outbound = new OutboundQueue(HIGH_WATER_BYTES);
+    private volatile boolean slowConsumer = false;
+
+    // Unsent bytes a client may fall behind by before it counts as a slow consumer,
+    // and what to do then: "disconnect" (default) or "drop" the messages that don't fit
+    private static final long HIGH_WATER_BYTES = Long.getLong("squabbles.outbound.highWaterBytes", 64 * 1024);
+    private static final boolean DROP_SLOW_CONSUMERS = "drop"
+            .equalsIgnoreCase(System.getProperty("squabbles.outbound.slowConsumerPolicy"));
+    private static final LongAdder SLOW_DISCONNECTED = ServerMetrics.counter("net.slowConsumers.disconnected");
+    private static final LongAdder SLOW_DROPPED = ServerMetrics.counter("net.slowConsumers.droppedMessages");
+
+    private static final LongAdder DUPLICATE_ACTIONS = ServerMetrics.counter("actions.duplicates");
+    private static final LongAdder STALE_ACTIONS = ServerMetrics.counter("actions.stale");
+    private static final LongAdder MESSAGES_FLUSHED = ServerMetrics.counter("net.messagesFlushed");
+    private static final LongAdder FLUSHES = ServerMetrics.counter("net.flushes");
+
+    static {
+        // Average messages per flush, x100 to keep the gauge integral
+        ServerMetrics.gauge("net.messagesPerFlush.x100",
+                () -> FLUSHES.sum() == 0 ? 0 : MESSAGES_FLUSHED.sum() * 100 / FLUSHES.sum());
+    }
 
     public ServerClient(Socket socket, int playerId, LobbyServer lobby) {
         this.socket = socket;
         this.playerId = playerId;
         this.lobby = lobby;
+        this.player = bindPlayer(playerName, Player.DEFAULT_MMR);
         if (socket != null) {
             try {
-                out = new PrintWriter(socket.getOutputStream(), true);
-                in = new Scanner(socket.getInputStream());
+                // Raw buffered streams rather than Scanner/PrintWriter: Scanner reads ahead,
+                // which would swallow the first binary frames after the protocol switch
+                out = new BufferedOutputStream(socket.getOutputStream());
+                in = new BufferedInputStream(socket.getInputStream());
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -37,12 +82,23 @@ public class ServerClient implements Runnable {
 
     @Override
     public void run() {
+        // Socket writes happen on their own thread so a stalled client only ever blocks itself
+        lobby.getThreadFactory().newThread(this::drainOutbound).start();
         try {
-            sendMessage(NetworkProtocol.MSG_WELCOME + " " + playerId);
+            sendWelcome();
 
-            while (in.hasNextLine()) {
-                String line = in.nextLine();
-                processMessage(line);
+            while (connected) {
+                if (binary) {
+                    ProtocolMessage message = BinaryCodec.readFrame(in);
+                    if (message == null)
+                        break;
+                    processMessage(message);
+                } else {
+                    String line = BinaryCodec.readLine(in);
+                    if (line == null)
+                        break;
+                    processMessage(line);
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -51,7 +107,24 @@ public class ServerClient implements Runnable {
         }
     }
 
+    protected void sendWelcome() {
+        // Capabilities after the ID; legacy clients only read the first token
+        sendMessage(ProtocolMessage.withText(MessageType.WELCOME, NetworkProtocol.CAP_BINARY + " "
+                + NetworkProtocol.CAP_CARD_IDS + " " + NetworkProtocol.CAP_DECK_PREFIX + CanonicalDeck.get().getHash(),
+                playerId));
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
     private String playerName = "Unknown";
+    // Matchmaking view of this connection (rating, queue time); rebound when the name changes
+    private volatile Player player;
 
     public String getPlayerName() {
         return playerName;
@@ -59,95 +132,350 @@ public class ServerClient implements Runnable {
 
     public void setPlayerName(String playerName) {
         this.playerName = playerName;
+        this.player = bindPlayer(playerName, player.mmr);
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    private Player bindPlayer(String name, int mmr) {
+        Player bound = new Player(String.valueOf(playerId), name, mmr);
+        bound.connection = this;
+        return bound;
     }
 
     protected void processMessage(String message) {
-        if (message.startsWith(NetworkProtocol.MSG_MATCH_ATTEMPT)) {
-            if (gameRoom != null) {
-                // Anti-Cheat: Cooldown
-                long now = System.currentTimeMillis();
-                if (now - lastActionTime < 200) { // 200ms cooldown
-                    return;
-                }
-                lastActionTime = now;
+        ProtocolMessage parsed;
+        try {
+            parsed = ProtocolMessage.parse(message);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ignoring malformed message from player " + playerId + ": " + message);
+            return;
+        }
+        processMessage(parsed);
+    }
 
-                int iconId = Integer.parseInt(message.split(" ")[1]);
-                gameRoom.handleMatch(this, iconId);
+    protected void processMessage(ProtocolMessage message) {
+        if (message.is(NetworkProtocol.MSG_MATCH_ATTEMPT)) {
+            if (gameRoom != null && message.intCount() > 1) {
+                handleSequencedMatch(message.getInt(0), message.getInt(1));
+            } else if (gameRoom != null && message.intCount() > 0) {
+                if (coolingDown())
+                    return;
+                gameRoom.handleMatch(this, message.getInt(0));
             }
-        } else if (message.startsWith(NetworkProtocol.MSG_REQUEST_STATE)) {
+        } else if (message.is(NetworkProtocol.MSG_REQUEST_STATE)) {
             if (gameRoom != null) {
                 gameRoom.sendState(this);
             }
-        } else if (message.startsWith(NetworkProtocol.MSG_END_GAME)) {
+        } else if (message.is(NetworkProtocol.MSG_END_GAME)) {
             if (gameRoom != null) {
                 gameRoom.endGame(this);
             }
-        } else if (message.startsWith(NetworkProtocol.MSG_JOIN_QUEUE)) {
-            // Parse name if available: JOIN_QUEUE Name
-            String[] parts = message.split(" ", 2);
-            if (parts.length > 1) {
-                this.playerName = parts[1];
+        } else if (message.is(NetworkProtocol.MSG_JOIN_QUEUE)) {
+            // Name if available: JOIN_QUEUE Name
+            if (message.getText() != null) {
+                setPlayerName(message.getText());
             }
             lobby.joinQueue(this);
-        } else if (message.startsWith(NetworkProtocol.MSG_PLAY_BOT)) {
+        } else if (message.is(NetworkProtocol.MSG_JOIN_RACE)) {
+            if (message.getText() != null) {
+                setPlayerName(message.getText());
+            }
+            lobby.joinRace(this);
+        } else if (message.is(NetworkProtocol.MSG_PLAY_BOT)) {
             // PLAY_BOT difficulty name
-            String[] parts = message.split(" ");
-            int difficulty = 1;
-            if (parts.length > 1) {
+            int difficulty = message.getInt(0, 1);
+            if (message.getText() != null) {
+                setPlayerName(message.getText());
+            }
+            lobby.startBotGame(this, difficulty);
+        } else if (message.is(NetworkProtocol.MSG_LEADERBOARD)) {
+            sendLeaderboard(message.getInt(0, 10));
+        } else if (message.is(NetworkProtocol.MSG_RANK)) {
+            Leaderboard.Entry entry = lobby.getLeaderboard().get(playerName);
+            int total = lobby.getLeaderboard().size();
+            sendMessage(ProtocolMessage.of(MessageType.RANK, entry == null ? 0 : entry.rank,
+                    entry == null ? 0 : entry.score, total));
+        } else if (message.is(NetworkProtocol.MSG_PROTOCOL)) {
+            negotiate(message.getText());
+        }
+    }
+
+    // Only this connection's reader advances lastSequence, so a plain compare is enough.
+    // The room acknowledges an applied attempt when it resolves it.
+    private void handleSequencedMatch(int iconId, int sequence) {
+        // Retries are answered before the cooldown so they never count as a new attempt
+        long last = player.lastSequence.get();
+        if (sequence == last) {
+            DUPLICATE_ACTIONS.increment();
+            sendMessage(ProtocolMessage.ack(sequence, NetworkProtocol.ACK_DUPLICATE));
+            return;
+        }
+        if (sequence < last) {
+            STALE_ACTIONS.increment();
+            sendMessage(ProtocolMessage.ack(sequence, NetworkProtocol.ACK_STALE));
+            return;
+        }
+        // Same cooldown as unsequenced attempts. A refused attempt is acknowledged STALE, so the
+        // client doesn't resend it and have it applied a second later anyway.
+        if (coolingDown()) {
+            sendMessage(ProtocolMessage.ack(sequence, NetworkProtocol.ACK_STALE));
+            return;
+        }
+        player.lastSequence.set(sequence);
+        player.lastActionTimestamp = System.currentTimeMillis();
+        gameRoom.handleMatch(this, iconId, sequence);
+    }
+
+    // Anti-Cheat Cooldown: at most one match attempt per 200ms, sequenced or not
+    private boolean coolingDown() {
+        long now = System.currentTimeMillis();
+        if (now - lastActionTime < 200) { // 200ms cooldown
+            return true;
+        }
+        lastActionTime = now;
+        return false;
+    }
+
+    private void sendLeaderboard(int requested) {
+        Leaderboard leaderboard = lobby.getLeaderboard();
+        List<Leaderboard.Entry> top = leaderboard.top(Math.max(1, Math.min(requested, NetworkProtocol.LEADERBOARD_MAX)));
+        beginBatch();
+        try {
+            sendMessage(ProtocolMessage.of(MessageType.LEADERBOARD, top.size(), leaderboard.size()));
+            for (Leaderboard.Entry entry : top) {
+                sendMessage(ProtocolMessage.withText(MessageType.LEADERBOARD_ENTRY, entry.name,
+                        entry.rank, entry.score, entry.wins, entry.losses));
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    // The acknowledgement is the last line in the old encoding; everything written after it
+    // uses the new one. Holding the write lock keeps room threads from slipping a message in between.
+    private void negotiate(String requested) {
+        writeLock.lock();
+        try {
+            StringBuilder accepted = new StringBuilder();
+            boolean wantsBinary = NetworkProtocol.hasCapability(requested, NetworkProtocol.CAP_BINARY);
+            if (wantsBinary)
+                accepted.append(' ').append(NetworkProtocol.CAP_BINARY);
+            if (NetworkProtocol.hasCapability(requested, NetworkProtocol.CAP_CARD_IDS))
+                accepted.append(' ').append(NetworkProtocol.CAP_CARD_IDS);
+            sendMessage(ProtocolMessage.withText(MessageType.PROTOCOL,
+                    accepted.length() == 0 ? null : accepted.substring(1)));
+            binary = binary || wantsBinary;
+            cardIdUpdates = NetworkProtocol.hasCapability(requested, NetworkProtocol.CAP_CARD_IDS);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends a preformatted text line. Server code builds ProtocolMessages instead, so binary
+     * clients skip the format-and-reparse; this stays for text-only callers.
+     */
+    public void sendMessage(String message) {
+        // The encoding is chosen under writeLock, like negotiate() switches it, so nothing
+        // encoded as text can land after the binary acknowledgement
+        writeLock.lock();
+        try {
+            if (binary) {
                 try {
-                    difficulty = Integer.parseInt(parts[1]);
-                } catch (NumberFormatException e) {
-                    difficulty = 1;
+                    write(BinaryCodec.encode(ProtocolMessage.parse(message)));
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
                 }
+                return;
             }
-            if (parts.length > 2) {
-                this.playerName = parts[2];
+            write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void sendMessage(ProtocolMessage message) {
+        writeLock.lock();
+        try {
+            if (binary) {
+                write(BinaryCodec.encode(message));
+            } else {
+                write((message.toText() + "\n").getBytes(StandardCharsets.UTF_8));
             }
-            lobby.startBotGame(this, difficulty);
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    public void sendMessage(String message) {
-        if (out != null)
-            out.println(message);
+    /**
+     * Queues already encoded bytes (a text line or a binary frame) for the client.
+     * Never blocks on the socket.
+     */
+    protected void write(byte[] data) {
+        writeLock.lock();
+        try {
+            pending.add(data);
+            if (batchDepth == 0)
+                flushPending();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Holds back flushing until the matching endBatch(), so everything one room
+     * action sends to this client leaves in a single write. Batches nest.
+     */
+    public void beginBatch() {
+        writeLock.lock();
+        try {
+            batchDepth++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void endBatch() {
+        writeLock.lock();
+        try {
+            if (batchDepth > 0 && --batchDepth == 0)
+                flushPending();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Caller holds writeLock
+    private void flushPending() {
+        if (pending.isEmpty())
+            return;
+        MESSAGES_FLUSHED.add(pending.size());
+        FLUSHES.increment();
+        if (outbound.offerAll(pending)) {
+            onOutboundReady();
+        } else {
+            onSlowConsumer(pending.size());
+        }
+        pending.clear();
+    }
+
+    private void onSlowConsumer(int messages) {
+        if (DROP_SLOW_CONSUMERS) {
+            SLOW_DROPPED.add(messages);
+            if (!slowConsumer)
+                System.out.println("Slow consumer: player " + playerId + " (" + playerName + ") has "
+                        + outbound.unsentBytes() + " unsent bytes, dropping messages.");
+        } else if (!slowConsumer) {
+            SLOW_DISCONNECTED.increment();
+            System.out.println("Slow consumer: player " + playerId + " (" + playerName + ") has "
+                    + outbound.unsentBytes() + " unsent bytes, disconnecting.");
+            dropConnection();
+        }
+        slowConsumer = true;
+    }
+
+    /**
+     * Wakes whoever writes the outbound queue to the socket. The blocking writer
+     * is already waiting on the queue itself.
+     */
+    protected void onOutboundReady() {
+    }
+
+    /**
+     * Cuts off a slow consumer from a room thread. Closing the socket makes the
+     * reader fail and run the normal disconnect() on its own thread, so the
+     * room is not modified while it may be iterating over its players.
+     */
+    protected void dropConnection() {
+        closeConnection();
+    }
+
+    protected OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    // Writer thread for socket-backed clients: one flush per batch of queued messages
+    private void drainOutbound() {
+        List<byte[]> batch = new ArrayList<>();
+        try {
+            while (outbound.takeAll(batch)) {
+                long bytes = 0;
+                for (byte[] frame : batch) {
+                    out.write(frame);
+                    bytes += frame.length;
+                }
+                out.flush();
+                outbound.release(bytes);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            // Reader side notices the dead socket and disconnects
+            closeConnection();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void sendState(Card centerCard) {
-        // Format: UPDATE_CARDS [CenterCardId:Icon1,Icon2...]
-        // [PlayerCardId:Icon1,Icon2...]
-        StringBuilder sb = new StringBuilder(NetworkProtocol.MSG_UPDATE_CARDS);
-        sb.append(" ");
-        sb.append(serializeCard(centerCard));
-        sb.append(" ");
-        sb.append(serializeCard(currentCard));
-        sendMessage(sb.toString());
+        if (cardIdUpdates) {
+            // UPDATE_CARD_IDS CenterCardId PlayerCardId Seed; the client looks icons up in its CanonicalDeck
+            // 16 bits covers the 8! = 40320 possible orders of an 8-icon card and keeps the varint short
+            int seed = ThreadLocalRandom.current().nextInt(1 << 16);
+            sendMessage(ProtocolMessage.of(MessageType.UPDATE_CARD_IDS, cardId(centerCard), cardId(currentCard), seed));
+            return;
+        }
+        // UPDATE_CARDS [CenterCardId:Icon1,Icon2...] [PlayerCardId:Icon1,Icon2...]
+        // Built as fields so binary clients never see the text form
+        int[] cardIds = { cardId(centerCard), cardId(currentCard) };
+        int[][] cardIcons = { iconIds(centerCard), iconIds(currentCard) };
+        sendMessage(new ProtocolMessage(MessageType.UPDATE_CARDS, new int[0], cardIds, cardIcons, null));
+    }
+
+    private static int cardId(Card card) {
+        return card == null ? 0 : card.getId();
     }
 
-    private String serializeCard(Card card) {
+    private static int[] iconIds(Card card) {
         if (card == null)
-            return "null";
-        StringBuilder sb = new StringBuilder();
-        sb.append(card.getId()).append(":");
-        for (Icon icon : card.getIcons()) {
-            sb.append(icon.getId()).append(",");
+            return null;
+        List<Icon> icons = card.getIcons();
+        int[] ids = new int[icons.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = icons.get(i).getId();
         }
-        return sb.toString();
+        return ids;
     }
 
     public void disconnect() {
         if (!connected)
             return;
         connected = false;
+        outbound.close();
+        closeConnection();
+        if (gameRoom != null) {
+            gameRoom.removePlayer(this);
+        }
+        lobby.removeClient(this);
+    }
+
+    protected void closeConnection() {
         try {
             if (socket != null)
                 socket.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        if (gameRoom != null) {
-            gameRoom.removePlayer(this);
-        }
-        lobby.removeClient(this);
+    }
+
+    protected GameRoom getGameRoom() {
+        return gameRoom;
+    }
+
+    protected LobbyServer getLobby() {
+        return lobby;
     }
 
     public int getPlayerId() {
@@ -0,0 +1,56 @@
+package com.squabbles.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide server counters and gauges.
+ * Counters are cheap LongAdders that any thread can bump; gauges are sampled
+ * only when a snapshot is taken. Used to compare server modes on one box.
+ */
+public class ServerMetrics {
+    private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    static {
+        gauge("jvm.threads.platform", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm.heap.usedKb",
+                () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1024);
+    }
+
+    private ServerMetrics() {
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static long value(String name) {
+        LongAdder counter = counters.get(name);
+        if (counter != null)
+            return counter.sum();
+        LongSupplier gauge = gauges.get(name);
+        return gauge != null ? gauge.getAsLong() : 0;
+    }
+
+    /**
+     * One line with every counter and gauge, e.g. for periodic logging.
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            sb.append(e.getKey()).append('=').append(e.getValue().sum()).append(' ');
+        }
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            sb.append(e.getKey()).append('=').append(e.getValue().getAsLong()).append(' ');
+        }
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,62 @@
+package com.squabbles.network;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Selects how GameServer services client connections.
+ * BLOCKING keeps one platform thread per connection (ServerClient.run),
+ * NIO multiplexes all connections over a few selector event loops and
+ * VIRTUAL keeps the blocking model but runs it on virtual threads.
+ */
+public enum ServerMode {
+    BLOCKING,
+    NIO,
+    VIRTUAL;
+
+    public static final String PROPERTY = "squabbles.server.mode";
+
+    /**
+     * Reads the mode from the "squabbles.server.mode" system property,
+     * falling back to BLOCKING when it is missing or unknown.
+     */
+    public static ServerMode fromProperty() {
+        return parse(System.getProperty(PROPERTY));
+    }
+
+    public static ServerMode parse(String value) {
+        if (value != null) {
+            for (ServerMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return BLOCKING;
+    }
+
+    public boolean usesVirtualThreads() {
+        return this == VIRTUAL;
+    }
+
+    /**
+     * Factory for the helper threads of this mode (turn timers, bots, readers).
+     */
+    public ThreadFactory threadFactory(String name) {
+        if (usesVirtualThreads()) {
+            return Thread.ofVirtual().name(name + "-", 0).factory();
+        }
+        return Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+    }
+
+    /**
+     * Executor that runs one task per connection.
+     */
+    public ExecutorService newConnectionExecutor() {
+        if (usesVirtualThreads()) {
+            return Executors.newThreadPerTaskExecutor(threadFactory("client"));
+        }
+        return Executors.newCachedThreadPool(threadFactory("client"));
+    }
+}
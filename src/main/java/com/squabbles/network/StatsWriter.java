@@ -0,0 +1,234 @@
+package com.squabbles.network;
+
+import com.squabbles.logic.Leaderboard;
+import com.squabbles.logic.Ratings;
+import com.squabbles.util.DatabaseManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind for game results. Rooms only enqueue a result; one writer thread
+ * drains whatever has piled up, folds it into one win/loss delta per player and
+ * applies the lot in a single transaction. The queue is bounded
+ * (squabbles.stats.queueCapacity, default 10000): when it is full the room waits
+ * for space rather than dropping a result. stop() writes out everything queued,
+ * and results recorded after that go straight to the database, one at a time. Each written
+ * batch is then applied to the in-memory leaderboard, and players whose result
+ * was in it are sent their new totals (RECORD).
+ *
+ * Rated games go through the same queue. This thread is the only one that
+ * updates ratings: it applies each game in order and writes the game and the
+ * new ratings in the same transaction as the batch's win/loss rows.
+ */
+public class StatsWriter {
+    private static final int CAPACITY = Integer.getInteger("squabbles.stats.queueCapacity", 10000);
+    private static final int MAX_BATCH = 500;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final LongAdder RESULTS = ServerMetrics.counter("stats.results");
+    private static final LongAdder BATCHES = ServerMetrics.counter("stats.batches");
+    private static final LongAdder ROWS = ServerMetrics.counter("stats.rowsWritten");
+    private static final LongAdder QUEUE_FULL = ServerMetrics.counter("stats.queueFull");
+    private static final LongAdder BLOCKED_MICROS = ServerMetrics.counter("stats.blockedMicrosTotal");
+    private static final LongAdder FAILED = ServerMetrics.counter("stats.failedResults");
+    private static final LongAdder RATED = ServerMetrics.counter("rating.matches");
+
+    static {
+        ServerMetrics.gauge("stats.avgBatchSize",
+                () -> BATCHES.sum() == 0 ? 0 : (RESULTS.sum() - FAILED.sum()) / BATCHES.sum());
+    }
+
+    // Either one player's win/loss or, with match set, one rated game
+    private static final class Result {
+        final String name;
+        final boolean won;
+        final Ratings.Match match;
+        final ServerClient client; // Told the new totals once written; may be null
+
+        Result(String name, boolean won, ServerClient client) {
+            this.name = name;
+            this.won = won;
+            this.match = null;
+            this.client = client;
+        }
+
+        Result(Ratings.Match match) {
+            this.name = null;
+            this.won = false;
+            this.match = match;
+            this.client = null;
+        }
+    }
+
+    private final BlockingQueue<Result> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Leaderboard leaderboard;
+    private final Ratings ratings;
+    private final Thread thread;
+    private volatile boolean running = true;
+    // Set by stop() once the writer thread is gone; guarded by this
+    private boolean stopped = false;
+
+    public StatsWriter(ThreadFactory threadFactory, Leaderboard leaderboard, Ratings ratings) {
+        this.leaderboard = leaderboard;
+        this.ratings = ratings;
+        ServerMetrics.gauge("stats.queueDepth", queue::size);
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a win or loss for a connected player, who gets a RECORD message once it is written.
+     */
+    public void record(ServerClient player, boolean won) {
+        RESULTS.increment();
+        enqueue(new Result(player.getPlayerName(), won, player));
+    }
+
+    /**
+     * Queues a rated game; the winner's and loser's results are recorded separately.
+     */
+    public void recordMatch(String winner, String loser) {
+        RATED.increment();
+        enqueue(new Result(new Ratings.Match(winner, loser, System.currentTimeMillis())));
+    }
+
+    private void enqueue(Result result) {
+        if (!queue.offer(result)) {
+            // Backpressure: the writer is behind, so wait for it instead of losing the result
+            QUEUE_FULL.increment();
+            long start = System.nanoTime();
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        if (queue.offer(result, 100, TimeUnit.MILLISECONDS))
+                            break;
+                    } catch (InterruptedException e) {
+                        // Keep waiting; only the writer thread may touch the database and the ratings
+                        interrupted = true;
+                        continue;
+                    }
+                    if (writeIfStopped(result, false))
+                        return;
+                }
+            } finally {
+                BLOCKED_MICROS.add((System.nanoTime() - start) / 1000);
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+        // stop() may have drained the queue after this result went in; if so it is ours to write
+        if (!running)
+            writeIfStopped(result, true);
+    }
+
+    // After stop() there is no writer thread, so late results are written here, one at a time
+    private synchronized boolean writeIfStopped(Result result, boolean queued) {
+        if (!stopped)
+            return false;
+        if (!queued || queue.remove(result))
+            write(List.of(result));
+        return true;
+    }
+
+    /**
+     * Stops taking new results and waits until everything already queued is written.
+     * Safe to call more than once.
+     */
+    public void stop() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // A result that raced past the running check lands here; write it ourselves. Anything
+        // queued after this is written by writeIfStopped, under the same lock.
+        synchronized (this) {
+            stopped = true;
+            List<Result> leftover = new ArrayList<>();
+            queue.drainTo(leftover);
+            if (!leftover.isEmpty())
+                write(leftover);
+        }
+    }
+
+    private void run() {
+        List<Result> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Result first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // Only stop() ends the loop, after the queue is empty
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Only now is the result on disk, so this is the first point the totals include it
+    private void sendRecords(List<Result> batch) {
+        for (Result result : batch) {
+            if (result.client == null || !result.client.isConnected())
+                continue;
+            Leaderboard.Entry entry = leaderboard.get(result.name);
+            if (entry != null)
+                result.client.sendMessage(ProtocolMessage.of(MessageType.RECORD, entry.wins, entry.losses));
+        }
+    }
+
+    private void write(List<Result> batch) {
+        // Several results for one player become a single row update
+        Map<String, int[]> deltas = new LinkedHashMap<>();
+        List<Ratings.Match> matches = new ArrayList<>();
+        for (Result result : batch) {
+            if (result.match != null) {
+                matches.add(result.match);
+                continue;
+            }
+            int[] delta = deltas.computeIfAbsent(result.name, k -> new int[2]);
+            delta[result.won ? 0 : 1]++;
+        }
+        // Rate the games in the order they ended; a player's last rating is the one written
+        Map<String, Integer> rated = new HashMap<>();
+        Map<String, Integer> before = new HashMap<>();
+        for (Ratings.Match match : matches) {
+            before.putIfAbsent(match.winner, ratings.get(match.winner));
+            before.putIfAbsent(match.loser, ratings.get(match.loser));
+            ratings.apply(match);
+            rated.put(match.winner, ratings.get(match.winner));
+            rated.put(match.loser, ratings.get(match.loser));
+        }
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (DatabaseManager.applyResults(deltas, matches, rated)) {
+                BATCHES.increment();
+                ROWS.add(deltas.size() + rated.size());
+                for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+                    leaderboard.add(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+                }
+                sendRecords(batch);
+                return;
+            }
+        }
+        // Keep memory in line with the database
+        before.forEach(ratings::put);
+        FAILED.add(batch.size());
+        System.out.println("Dropped " + batch.size() + " game results after " + MAX_ATTEMPTS + " failed writes");
+    }
+}
@@ -0,0 +1,111 @@
+package com.squabbles.network;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional fixed-rate room engine, enabled with -Dsquabbles.room.engine=tick.
+ * Rooms are spread over a few workers; on every tick a worker advances each
+ * of its rooms once: inputs queued since the last tick are resolved together,
+ * turn deadlines are checked, and state changes go out as one diff. CPU per
+ * room and messages per second stay bounded by the tick rate however busy
+ * the players are.
+ */
+public class TickEngine {
+    private static final LongAdder TICKS = ServerMetrics.counter("tick.roomTicks");
+    private static final LongAdder OVERRUNS = ServerMetrics.counter("tick.overruns");
+    private static final LongAdder TICK_MICROS = ServerMetrics.counter("tick.workerMicrosTotal");
+    private static final LongAdder WORKER_TICKS = ServerMetrics.counter("tick.workerTicks");
+
+    static {
+        ServerMetrics.gauge("tick.avgWorkerMicros",
+                () -> WORKER_TICKS.sum() == 0 ? 0 : TICK_MICROS.sum() / WORKER_TICKS.sum());
+    }
+
+    private final Worker[] workers;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicInteger next = new AtomicInteger();
+    private final long periodNanos;
+
+    public TickEngine(int workerCount, int ticksPerSecond) {
+        this.workers = new Worker[Math.max(1, workerCount)];
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, ticksPerSecond);
+        this.scheduler = new ScheduledThreadPoolExecutor(workers.length, ServerMode.BLOCKING.threadFactory("tick"));
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Starts every worker ticking.
+     */
+    public void start() {
+        for (Worker worker : workers) {
+            scheduler.scheduleAtFixedRate(worker::tick, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        }
+        ServerMetrics.gauge("tick.rooms", this::roomCount);
+    }
+
+    /**
+     * Engine from system properties, or null when rooms are event driven (the default).
+     */
+    public static TickEngine fromProperties() {
+        if (!"tick".equalsIgnoreCase(System.getProperty("squabbles.room.engine")))
+            return null;
+        int workers = Integer.getInteger("squabbles.tick.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        int rate = Integer.getInteger("squabbles.tick.rateHz", 20);
+        System.out.println("Tick engine: " + workers + " workers at " + rate + " Hz");
+        return new TickEngine(workers, rate);
+    }
+
+    public void add(GameRoom room) {
+        workers[Math.floorMod(next.getAndIncrement(), workers.length)].rooms.add(room);
+    }
+
+    public void remove(GameRoom room) {
+        for (Worker worker : workers) {
+            if (worker.rooms.remove(room))
+                return;
+        }
+    }
+
+    public int roomCount() {
+        int count = 0;
+        for (Worker worker : workers) {
+            count += worker.rooms.size();
+        }
+        return count;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        LobbyServer.awaitStopped(scheduler);
+    }
+
+    private final class Worker {
+        final Set<GameRoom> rooms = ConcurrentHashMap.newKeySet();
+
+        // Always on the same scheduler thread at a time, so a room never ticks concurrently
+        void tick() {
+            long start = System.nanoTime();
+            long now = System.currentTimeMillis();
+            for (GameRoom room : rooms) {
+                try {
+                    room.tick(now);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                TICKS.increment();
+            }
+            long elapsed = System.nanoTime() - start;
+            WORKER_TICKS.increment();
+            TICK_MICROS.add(elapsed / 1000);
+            if (elapsed > periodNanos)
+                OVERRUNS.increment();
+        }
+    }
+}
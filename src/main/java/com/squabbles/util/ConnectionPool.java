@@ -0,0 +1,113 @@
+package com.squabbles.util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of long-lived SQLite connections. Each connection is set up once
+ * (WAL journal, relaxed sync, memory-mapped reads) and keeps its own prepared
+ * statements, so a call only borrows a connection and rebinds parameters.
+ */
+class ConnectionPool {
+    private static final long ACQUIRE_TIMEOUT_MS = 5000;
+
+    // Applied to every connection when it opens. In WAL mode NORMAL sync only risks the
+    // last commits on power loss, never corruption; readers don't block the writer.
+    private static final String[] PRAGMAS = {
+            "PRAGMA journal_mode=WAL",
+            "PRAGMA synchronous=NORMAL",
+            "PRAGMA busy_timeout=5000",
+            "PRAGMA mmap_size=268435456",
+            "PRAGMA temp_store=MEMORY",
+            "PRAGMA cache_size=-8000"
+    };
+
+    private final BlockingQueue<Pooled> idle;
+    private final List<Pooled> all = new ArrayList<>();
+
+    ConnectionPool(String url, int size) throws SQLException {
+        this.idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                Pooled pooled = new Pooled(DriverManager.getConnection(url));
+                all.add(pooled);
+                idle.add(pooled);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    Pooled acquire() throws SQLException {
+        try {
+            Pooled pooled = idle.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (pooled == null)
+                throw new SQLException("No database connection free after " + ACQUIRE_TIMEOUT_MS + " ms");
+            return pooled;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection", e);
+        }
+    }
+
+    void release(Pooled pooled) {
+        idle.offer(pooled);
+    }
+
+    void close() {
+        for (Pooled pooled : all) {
+            pooled.close();
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    /**
+     * One connection and its statement cache. Only the thread that acquired it may use it.
+     */
+    static final class Pooled {
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        Pooled(Connection connection) throws SQLException {
+            this.connection = connection;
+            try (Statement stmt = connection.createStatement()) {
+                for (String pragma : PRAGMAS) {
+                    stmt.execute(pragma);
+                }
+            }
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void close() {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -1,63 +1,339 @@
 package com.squabbles.util;
 
+import com.squabbles.logic.Leaderboard;
+import com.squabbles.logic.Ratings;
+import com.squabbles.model.Player;
+import com.squabbles.model.PlayerStats;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Player records in SQLite. Calls borrow a connection from a small pool that
+ * lives until shutdown(); the database file is squabbles.db in the working
+ * directory unless -Dsquabbles.db.path says otherwise, and
+ * -Dsquabbles.db.poolSize sets the number of connections (default 4).
+ *
+ * Records are read through a bounded cache (-Dsquabbles.stats.cacheSize, default
+ * 1024) that every stats write updates as well. The *Async methods run on one
+ * background thread, in submission order, for callers such as the JavaFX
+ * thread that must never wait on disk.
+ */
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:sqlite:squabbles.db";
+    private static final String DB_PATH = System.getProperty("squabbles.db.path", "squabbles.db");
+    private static final int POOL_SIZE = Integer.getInteger("squabbles.db.poolSize", 4);
 
-    public static void initialize() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
-            String sql = "CREATE TABLE IF NOT EXISTS players (" +
-                         "name TEXT PRIMARY KEY, " +
-                         "wins INTEGER DEFAULT 0, " +
-                         "losses INTEGER DEFAULT 0)";
-            stmt.execute(sql);
+    private static final String SQL_ADD_PLAYER = "INSERT OR IGNORE INTO players(name) VALUES(?)";
+    // score is Leaderboard.score(wins, losses), kept in step by every write and indexed for ranking
+    private static final String SQL_ADD_WIN = "UPDATE players SET wins = wins + 1, score = score + "
+            + Leaderboard.WIN_POINTS + " WHERE name = ?";
+    private static final String SQL_ADD_LOSS = "UPDATE players SET losses = losses + 1, score = score - "
+            + Leaderboard.LOSS_POINTS + " WHERE name = ?";
+    private static final String SQL_ADD_RESULTS = "UPDATE players SET wins = wins + ?, losses = losses + ?, "
+            + "score = score + ? WHERE name = ?";
+    private static final String SQL_GET_STATS = "SELECT wins, losses FROM players WHERE name = ?";
+    private static final String SQL_SET_RATING = "UPDATE players SET mmr = ? WHERE name = ?";
+    private static final String SQL_ADD_MATCH = "INSERT INTO matches(played_at, winner, loser) VALUES(?, ?, ?)";
+
+    private static final StatsCache CACHE = new StatsCache(Integer.getInteger("squabbles.stats.cacheSize", 1024));
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "db-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static ConnectionPool pool;
+
+    private interface SqlWork<T> {
+        T run(ConnectionPool.Pooled connection) throws SQLException;
+    }
+
+    // Opened on first use, and again after shutdown() if something still needs it
+    private static synchronized ConnectionPool pool() throws SQLException {
+        if (pool == null) {
+            pool = new ConnectionPool("jdbc:sqlite:" + DB_PATH, POOL_SIZE);
+        }
+        return pool;
+    }
+
+    private static <T> T withConnection(SqlWork<T> work, T fallback) {
+        try {
+            ConnectionPool current = pool();
+            ConnectionPool.Pooled connection = current.acquire();
+            try {
+                return work.run(connection);
+            } finally {
+                current.release(connection);
+            }
         } catch (SQLException e) {
             e.printStackTrace();
+            return fallback;
         }
     }
 
+    public static void initialize() {
+        withConnection(connection -> {
+            try (Statement stmt = connection.connection.createStatement()) {
+                String sql = "CREATE TABLE IF NOT EXISTS players (" +
+                             "name TEXT PRIMARY KEY, " +
+                             "wins INTEGER DEFAULT 0, " +
+                             "losses INTEGER DEFAULT 0, " +
+                             "score INTEGER DEFAULT 0, " +
+                             "mmr INTEGER DEFAULT " + Player.DEFAULT_MMR + ")";
+                stmt.execute(sql);
+                // Every rated game, oldest first, so ratings can be recomputed from scratch
+                stmt.execute("CREATE TABLE IF NOT EXISTS matches (" +
+                             "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                             "played_at INTEGER, " +
+                             "winner TEXT, " +
+                             "loser TEXT)");
+                // Databases from before the leaderboard: add the score column and fill it in
+                if (!hasColumn(stmt, "players", "score")) {
+                    stmt.execute("ALTER TABLE players ADD COLUMN score INTEGER DEFAULT 0");
+                    stmt.execute("UPDATE players SET score = " + Leaderboard.WIN_POINTS + " * wins - "
+                            + Leaderboard.LOSS_POINTS + " * losses");
+                }
+                if (!hasColumn(stmt, "players", "mmr")) {
+                    stmt.execute("ALTER TABLE players ADD COLUMN mmr INTEGER DEFAULT " + Player.DEFAULT_MMR);
+                }
+                // The leaderboard ranks in memory, so the old score index is only write cost
+                stmt.execute("DROP INDEX IF EXISTS idx_players_score");
+            }
+            return null;
+        }, null);
+    }
+
+    private static boolean hasColumn(Statement stmt, String table, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name")))
+                    return true;
+            }
+        }
+        return false;
+    }
+
     public static void addPlayer(String name) {
-        String sql = "INSERT OR IGNORE INTO players(name) VALUES(?)";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        withConnection(connection -> {
+            PreparedStatement pstmt = connection.prepare(SQL_ADD_PLAYER);
             pstmt.setString(1, name);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            return pstmt.executeUpdate();
+        }, 0);
     }
 
     public static void updateStats(String name, boolean won) {
-        String sql = won ? "UPDATE players SET wins = wins + 1 WHERE name = ?" 
-                         : "UPDATE players SET losses = losses + 1 WHERE name = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        withConnection(connection -> {
+            PreparedStatement pstmt = connection.prepare(won ? SQL_ADD_WIN : SQL_ADD_LOSS);
             pstmt.setString(1, name);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            int rows = pstmt.executeUpdate();
+            CACHE.add(name, won ? 1 : 0, won ? 0 : 1);
+            return rows;
+        }, 0);
+    }
+
+    /**
+     * Adds {wins, losses} per player name, creating players not seen before, and in the
+     * same transaction stores rated games for the match history and the players' new ratings.
+     *
+     * @return false if nothing was written
+     */
+    public static boolean applyResults(Map<String, int[]> deltas, List<Ratings.Match> matches,
+            Map<String, Integer> ratings) {
+        return withConnection(connection -> {
+            Connection conn = connection.connection;
+            PreparedStatement insert = connection.prepare(SQL_ADD_PLAYER);
+            PreparedStatement pstmt = connection.prepare(SQL_ADD_RESULTS);
+            PreparedStatement history = connection.prepare(SQL_ADD_MATCH);
+            PreparedStatement rating = connection.prepare(SQL_SET_RATING);
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+                    insert.setString(1, entry.getKey());
+                    insert.addBatch();
+                    pstmt.setInt(1, entry.getValue()[0]);
+                    pstmt.setInt(2, entry.getValue()[1]);
+                    pstmt.setInt(3, Leaderboard.score(entry.getValue()[0], entry.getValue()[1]));
+                    pstmt.setString(4, entry.getKey());
+                    pstmt.addBatch();
+                }
+                for (Ratings.Match match : matches) {
+                    history.setLong(1, match.playedAt);
+                    history.setString(2, match.winner);
+                    history.setString(3, match.loser);
+                    history.addBatch();
+                }
+                for (Map.Entry<String, Integer> entry : ratings.entrySet()) {
+                    insert.setString(1, entry.getKey());
+                    insert.addBatch();
+                    rating.setInt(1, entry.getValue());
+                    rating.setString(2, entry.getKey());
+                    rating.addBatch();
+                }
+                insert.executeBatch();
+                pstmt.executeBatch();
+                history.executeBatch();
+                rating.executeBatch();
+                conn.commit();
+                for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+                    CACHE.add(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+                }
+                return true;
+            } catch (SQLException e) {
+                insert.clearBatch();
+                pstmt.clearBatch();
+                history.clearBatch();
+                rating.clearBatch();
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }, false);
     }
 
     public static String getStats(String name) {
-        String sql = "SELECT wins, losses FROM players WHERE name = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        PlayerStats stats = lookupStats(name);
+        return stats == null ? "New Player" : stats.toString();
+    }
+
+    /**
+     * @return the player's record, or null if they have none
+     */
+    public static PlayerStats lookupStats(String name) {
+        PlayerStats cached = CACHE.get(name);
+        if (cached != null)
+            return cached;
+        long writesBefore = CACHE.writeCount();
+        PlayerStats loaded = withConnection(connection -> {
+            PreparedStatement pstmt = connection.prepare(SQL_GET_STATS);
             pstmt.setString(1, name);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return "Wins: " + rs.getInt("wins") + " | Losses: " + rs.getInt("losses");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new PlayerStats(name, rs.getInt("wins"), rs.getInt("losses"));
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return null;
+        }, null);
+        if (loaded != null)
+            CACHE.putIfUnchanged(loaded, writesBefore);
+        return loaded;
+    }
+
+    /**
+     * Fills a leaderboard with every player that has played a game.
+     *
+     * @return the number of players loaded
+     */
+    public static int loadLeaderboard(Leaderboard leaderboard) {
+        return withConnection(connection -> {
+            int count = 0;
+            try (Statement stmt = connection.connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT name, wins, losses FROM players WHERE wins + losses > 0")) {
+                while (rs.next()) {
+                    leaderboard.put(rs.getString("name"), rs.getInt("wins"), rs.getInt("losses"));
+                    count++;
+                }
+            }
+            return count;
+        }, 0);
+    }
+
+    /**
+     * Fills in every stored rating that differs from the default.
+     *
+     * @return the number of ratings loaded
+     */
+    public static int loadRatings(Ratings ratings) {
+        return withConnection(connection -> {
+            int count = 0;
+            try (Statement stmt = connection.connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT name, mmr FROM players WHERE mmr <> " + Player.DEFAULT_MMR)) {
+                while (rs.next()) {
+                    ratings.put(rs.getString("name"), rs.getInt("mmr"));
+                    count++;
+                }
+            }
+            return count;
+        }, 0);
+    }
+
+    /**
+     * Every rated game, oldest first.
+     */
+    public static List<Ratings.Match> loadMatchHistory() {
+        return withConnection(connection -> {
+            List<Ratings.Match> history = new ArrayList<>();
+            try (Statement stmt = connection.connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT winner, loser, played_at FROM matches ORDER BY id")) {
+                while (rs.next()) {
+                    history.add(new Ratings.Match(rs.getString("winner"), rs.getString("loser"), rs.getLong("played_at")));
+                }
+            }
+            return history;
+        }, List.of());
+    }
+
+    /**
+     * Resets every rating to the default and then stores the given ones, in one transaction.
+     */
+    public static boolean replaceRatings(Map<String, Integer> ratings) {
+        return withConnection(connection -> {
+            Connection conn = connection.connection;
+            PreparedStatement rating = connection.prepare(SQL_SET_RATING);
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("UPDATE players SET mmr = " + Player.DEFAULT_MMR);
+                for (Map.Entry<String, Integer> entry : ratings.entrySet()) {
+                    rating.setInt(1, entry.getValue());
+                    rating.setString(2, entry.getKey());
+                    rating.addBatch();
+                }
+                rating.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                rating.clearBatch();
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }, false);
+    }
+
+    /**
+     * lookupStats without blocking: completes at once on a cache hit, otherwise on the I/O thread.
+     */
+    public static CompletableFuture<PlayerStats> getStatsAsync(String name) {
+        PlayerStats cached = CACHE.get(name);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        return CompletableFuture.supplyAsync(() -> lookupStats(name), IO);
+    }
+
+    /**
+     * Runs database work on the I/O thread, after anything submitted before it.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable work) {
+        return CompletableFuture.runAsync(work, IO);
+    }
+
+    /**
+     * Closes every pooled connection. Safe to call more than once.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
-        return "New Player";
     }
 }
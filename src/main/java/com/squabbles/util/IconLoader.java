@@ -72,6 +72,9 @@ public class IconLoader {
     /**
      * Gets the emoji fallback for a given icon ID.
      * 
+     * Decks larger than the standard 57 icons reuse the set with a number
+     * after the emoji (e.g. icon 58 is "🦁2").
+     *
      * @param iconId The ID of the icon
      * @return The emoji string
      */
@@ -79,6 +82,10 @@ public class IconLoader {
         if (iconId > 0 && iconId < EMOJI_FALLBACKS.length) {
             return EMOJI_FALLBACKS[iconId];
         }
+        if (iconId > 0) {
+            int base = EMOJI_FALLBACKS.length - 1;
+            return EMOJI_FALLBACKS[(iconId - 1) % base + 1] + ((iconId - 1) / base + 1);
+        }
         return "?";
     }
 
@@ -107,7 +114,14 @@ public class IconLoader {
      * This can be called during application startup for better performance.
      */
     public void preloadIcons() {
-        for (int i = 1; i <= 57; i++) {
+        preloadIcons(EMOJI_FALLBACKS.length - 1);
+    }
+
+    /**
+     * Preloads icons 1..iconCount, for decks with more than 57 icons.
+     */
+    public void preloadIcons(int iconCount) {
+        for (int i = 1; i <= iconCount; i++) {
             loadIcon(i);
         }
     }
@@ -0,0 +1,54 @@
+package com.squabbles.util;
+
+import com.squabbles.model.PlayerStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of player records in front of the players table, evicting the
+ * least recently used. DatabaseManager fills it on lookups and applies every
+ * result it writes to the cached record, so cached entries stay current
+ * without going back to disk.
+ */
+class StatsCache {
+    private final Map<String, PlayerStats> entries;
+    // Bumped by every write, so a load that overlapped one isn't cached
+    private long writes = 0;
+
+    StatsCache(int capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PlayerStats> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized PlayerStats get(String name) {
+        return entries.get(name);
+    }
+
+    synchronized long writeCount() {
+        return writes;
+    }
+
+    /**
+     * Caches a record read from disk, unless a write happened since writeCount() was taken.
+     */
+    synchronized void putIfUnchanged(PlayerStats stats, long writeCountBefore) {
+        if (writes == writeCountBefore)
+            entries.put(stats.getName(), stats);
+    }
+
+    synchronized void add(String name, int wins, int losses) {
+        writes++;
+        PlayerStats cached = entries.get(name);
+        if (cached != null)
+            entries.put(name, cached.plus(wins, losses));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
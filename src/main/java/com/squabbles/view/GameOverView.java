@@ -1,6 +1,10 @@
 package com.squabbles.view;
 
 import com.squabbles.Main;
+import com.squabbles.model.PlayerStats;
+import com.squabbles.network.GameClient;
+import com.squabbles.network.NetworkProtocol;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -10,9 +14,22 @@ import javafx.scene.layout.VBox;
 public class GameOverView {
     private String winnerText;
     private String playerName;
+    // Filled in by the server once this game's result is written; the local
+    // database knows nothing about games played on another machine
+    private final Label recordLabel = new Label();
 
-    public GameOverView(String winnerText, String playerName) {
+    public GameOverView(String winnerText, String playerName, GameClient client) {
         this.playerName = playerName;
+        // Take over the connection now, not when the scene shows, so a RECORD that
+        // follows GAME_OVER closely still lands here
+        if (client != null) {
+            client.setMessageHandler(message -> {
+                if (message.is(NetworkProtocol.MSG_RECORD)) {
+                    PlayerStats stats = new PlayerStats(playerName, message.getInt(0), message.getInt(1));
+                    Platform.runLater(() -> recordLabel.setText(playerName + " - " + stats));
+                }
+            });
+        }
         if (winnerText != null && winnerText.startsWith("GAME_OVER")) {
             String[] parts = winnerText.split(" ", 2);
             this.winnerText = parts.length > 1 ? parts[1].trim() : "Unknown";
@@ -32,6 +49,8 @@ public class GameOverView {
         Label winnerLabel = new Label(winnerText);
         winnerLabel.setStyle("-fx-font-size: 28px; -fx-text-fill: #ffd700; -fx-font-weight: bold;");
 
+        recordLabel.getStyleClass().add("message-label");
+
         Button playAgainButton = new Button("Play Again");
         playAgainButton.setOnAction(e -> Main.setScene(new SessionSetupView(playerName).getScene()));
 
@@ -39,7 +58,7 @@ public class GameOverView {
         exitButton.setOnAction(e -> Main.setScene(new WelcomeView().getScene()));
         exitButton.setStyle("-fx-background-color: #d9534f;"); // Red for exit
 
-        root.getChildren().addAll(header, winnerLabel, playAgainButton, exitButton);
+        root.getChildren().addAll(header, winnerLabel, recordLabel, playAgainButton, exitButton);
 
         return new Scene(root, 800, 600);
     }
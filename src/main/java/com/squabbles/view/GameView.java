@@ -1,8 +1,10 @@
 package com.squabbles.view;
 
 import com.squabbles.Main;
+import com.squabbles.logic.CanonicalDeck;
 import com.squabbles.network.GameClient;
 import com.squabbles.network.NetworkProtocol;
+import com.squabbles.network.ProtocolMessage;
 import com.squabbles.util.IconLoader;
 import javafx.animation.FadeTransition;
 import javafx.animation.ParallelTransition;
@@ -52,6 +54,7 @@ public class GameView {
 
     // Per-turn click lock: one attempt at a time per player
     private boolean canClick = true;
+    private boolean race = false; // Everyone plays at once; no turns, no turn timer
 
     private static final String MULTI_INSTRUCTION = "Your turn! First to 10 points wins. Find the matching icon.";
     private static final String SINGLE_INSTRUCTION = "Match as many icons as you can!";
@@ -130,33 +133,32 @@ public class GameView {
     private javafx.scene.control.ProgressBar turnTimerBar;
     private javafx.animation.Timeline timerAnimation;
 
-    private void handleMessage(String message) {
-        if (message.startsWith(NetworkProtocol.MSG_UPDATE_CARDS)) {
-            // Format: UPDATE_CARDS CenterCard PlayerCard
-            String[] parts = message.split(" ");
-            if (parts.length >= 3) {
-                String centerData = parts[1];
-                String playerData = parts[2];
-                Platform.runLater(() -> updateBoard(centerData, playerData));
+    private void handleMessage(ProtocolMessage message) {
+        if (message.is(NetworkProtocol.MSG_UPDATE_CARDS)) {
+            // UPDATE_CARDS CenterCard PlayerCard
+            if (message.cardCount() >= 2) {
+                int[] centerIcons = message.getCardIcons(0);
+                int[] playerIcons = message.getCardIcons(1);
+                Platform.runLater(() -> updateBoard(centerIcons, playerIcons));
             }
-        } else if (message.startsWith(NetworkProtocol.MSG_MATCH_RESULT)) {
+        } else if (message.is(NetworkProtocol.MSG_UPDATE_CARD_IDS)) {
+            // UPDATE_CARD_IDS CenterCardId PlayerCardId Seed: icons come from the shared deck table,
+            // the seed only decides the order they are laid out in
+            Random order = new Random(message.getInt(2));
+            int[] centerIcons = lookupIcons(message.getInt(0), order);
+            int[] playerIcons = lookupIcons(message.getInt(1), order);
+            Platform.runLater(() -> updateBoard(centerIcons, playerIcons));
+        } else if (message.is(NetworkProtocol.MSG_MATCH_RESULT)) {
             // MSG_MATCH_RESULT success score lives [reason]
-            String[] parts = message.split(" ");
-            boolean success = Boolean.parseBoolean(parts[1]);
-            int newScore = Integer.parseInt(parts[2]);
-            int tempLives = 5;
-            if (parts.length > 3) {
-                try {
-                    tempLives = Integer.parseInt(parts[3]);
-                } catch (NumberFormatException e) {
-                    // ignore
-                }
-            }
-            final int newLives = tempLives;
+            boolean success = message.getBoolean(0);
+            int newScore = message.getInt(1);
+            final int newLives = message.getInt(2, 5);
 
             Platform.runLater(() -> {
                 scoreLabel.setText("Score: " + newScore);
                 livesLabel.setText("Lives: " + newLives);
+                if (race)
+                    canClick = true;
 
                 long currentTime = System.currentTimeMillis();
                 if (success) {
@@ -189,12 +191,20 @@ public class GameView {
                     }
                 }, 1000);
             });
-        } else if (message.startsWith(NetworkProtocol.MSG_TURN_UPDATE)) {
+        } else if (message.is(NetworkProtocol.MSG_TURN_UPDATE)) {
             // MSG_TURN_UPDATE playerId
-            String[] parts = message.split(" ");
-            int turnPlayerId = Integer.parseInt(parts[1]);
+            int turnPlayerId = message.getInt(0);
 
             Platform.runLater(() -> {
+                if (turnPlayerId == NetworkProtocol.RACE_TURN) {
+                    race = true;
+                    messageLabel.setText("Race! First correct match wins the card");
+                    messageLabel.setTextFill(Color.YELLOW);
+                    canClick = true;
+                    if (timerAnimation != null)
+                        timerAnimation.stop();
+                    return;
+                }
                 if (client.getPlayerId() == turnPlayerId) {
                     messageLabel.setText("Your Turn!");
                     messageLabel.setTextFill(Color.YELLOW);
@@ -206,11 +216,24 @@ public class GameView {
                 }
                 resetTimer();
             });
-        } else if (message.startsWith(NetworkProtocol.MSG_GAME_OVER)) {
-            Platform.runLater(() -> Main.setScene(new GameOverView(message, playerName).getScene()));
+        } else if (message.is(NetworkProtocol.MSG_STALE_CLAIM)) {
+            // Right answer, but someone else claimed the card first; no penalty
+            Platform.runLater(() -> {
+                messageLabel.setText("Too slow!");
+                messageLabel.setTextFill(Color.ORANGE);
+                canClick = true;
+            });
+        } else if (message.is(NetworkProtocol.MSG_GAME_OVER)) {
+            GameOverView gameOver = new GameOverView(message.getText(), playerName, client);
+            Platform.runLater(() -> Main.setScene(gameOver.getScene()));
         }
     }
 
+    private int[] lookupIcons(int cardId, Random order) {
+        CanonicalDeck deck = CanonicalDeck.get();
+        return deck.contains(cardId) ? deck.shuffledIconIds(cardId, order) : null;
+    }
+
     private void resetTimer() {
         if (timerAnimation != null) {
             timerAnimation.stop();
@@ -249,25 +272,21 @@ public class GameView {
         pt.play();
     }
 
-    private void updateBoard(String centerData, String playerData) {
+    private void updateBoard(int[] centerIcons, int[] playerIcons) {
         cardsContainer.getChildren().clear();
 
-        if (centerData != null && !centerData.equals("null")) {
-            VBox centerBox = createCard("Center Card", 0.6, centerData, false);
+        if (centerIcons != null) {
+            VBox centerBox = createCard("Center Card", 0.6, centerIcons, false);
             cardsContainer.getChildren().add(centerBox);
         }
 
-        if (playerData != null && !playerData.equals("null")) {
-            VBox playerBox = createCard("Your Card", 1.0, playerData, true);
+        if (playerIcons != null) {
+            VBox playerBox = createCard("Your Card", 1.0, playerIcons, true);
             cardsContainer.getChildren().add(playerBox);
         }
     }
 
-    private VBox createCard(String title, double scale, String cardData, boolean interactive) {
-        // cardData format: ID:Icon1,Icon2...
-        String[] parts = cardData.split(":");
-        // String cardId = parts[0];
-        String[] iconIds = parts[1].split(",");
+    private VBox createCard(String title, double scale, int[] iconIds, boolean interactive) {
 
         StackPane cardPane = new StackPane();
         // Circular card look
@@ -280,12 +299,13 @@ public class GameView {
 
         // Precompute layout parameters to minimise overlap
         int iconCount = iconIds.length;
+        // Shrink icons on cards of larger decks (8 per card is the standard size)
+        double density = Math.min(1.0, 8.0 / Math.max(1, iconCount));
         double nodeSize = 60 * scale;
         double maxRadius = (size / 2) - nodeSize;
 
         for (int index = 0; index < iconIds.length; index++) {
-            String iconIdStr = iconIds[index];
-            int iconId = Integer.parseInt(iconIdStr);
+            int iconId = iconIds[index];
 
             Node iconNode;
             Image iconImage = IconLoader.getInstance().loadIcon(iconId);
@@ -302,7 +322,7 @@ public class GameView {
             if (iconImage != null) {
                 ImageView imageView = new ImageView(iconImage);
                 // Scale image relative to card size
-                double imgSize = (40 + random.nextInt(40)) * scale;
+                double imgSize = (40 + random.nextInt(40)) * scale * density;
                 imageView.setFitWidth(imgSize);
                 imageView.setFitHeight(imgSize);
                 imageView.setPreserveRatio(true);
@@ -315,7 +335,7 @@ public class GameView {
                 Text iconText = new Text(emoji);
 
                 // Random Sizing
-                double fontSize = (40 + random.nextInt(40)) * scale;
+                double fontSize = (40 + random.nextInt(40)) * scale * density;
                 iconText.setFont(Font.font("Segoe UI Emoji", fontSize));
 
                 // Per-emoji colorful glow effect
@@ -4,6 +4,7 @@ import com.squabbles.Main;
 import com.squabbles.network.GameClient;
 import com.squabbles.network.GameServer;
 import com.squabbles.network.NetworkProtocol;
+import com.squabbles.network.ProtocolMessage;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -254,17 +255,16 @@ public class SessionSetupView {
         }
     }
 
-    private void handleMessage(String message) {
-        if (message.startsWith(NetworkProtocol.MSG_WELCOME)) {
-            String playerId = message.split(" ")[1];
+    private void handleMessage(ProtocolMessage message) {
+        if (message.is(NetworkProtocol.MSG_WELCOME)) {
+            int playerId = message.getInt(0);
             Platform.runLater(
                     () -> statusLabel.setText("Connected as Player " + playerId + ". Joined Queue..."));
-        } else if (message.startsWith(NetworkProtocol.MSG_JOIN_QUEUE)) {
-            Platform.runLater(
-                    () -> statusLabel.setText(message.substring(NetworkProtocol.MSG_JOIN_QUEUE.length() + 1)));
-        } else if (message.startsWith(NetworkProtocol.MSG_GAME_FOUND)) {
+        } else if (message.is(NetworkProtocol.MSG_JOIN_QUEUE)) {
+            Platform.runLater(() -> statusLabel.setText(message.getText()));
+        } else if (message.is(NetworkProtocol.MSG_GAME_FOUND)) {
             Platform.runLater(() -> statusLabel.setText("Match Found! Starting..."));
-        } else if (message.startsWith(NetworkProtocol.MSG_START_GAME)) {
+        } else if (message.is(NetworkProtocol.MSG_START_GAME)) {
             Platform.runLater(() -> {
                 // Transition to GameView (true => multiplayer mode)
                 Main.setScene(new GameView(client, true, playerName).getScene());
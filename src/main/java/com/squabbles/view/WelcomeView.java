@@ -3,6 +3,8 @@ package com.squabbles.view;
 import com.squabbles.Main;
 import com.squabbles.network.GameClient;
 import com.squabbles.network.GameServer;
+import com.squabbles.util.DatabaseManager;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -11,9 +13,12 @@ import javafx.scene.layout.VBox;
 
 public class WelcomeView {
     private javafx.scene.control.TextField nameField;
+    // Index + 1 is the PLAY_BOT difficulty
+    private javafx.scene.control.ComboBox<String> difficultyBox;
 
     public Scene getScene() {
-        com.squabbles.util.DatabaseManager.initialize();
+        // Database work stays off the FX thread; the I/O thread runs it in order
+        DatabaseManager.runAsync(DatabaseManager::initialize);
 
         VBox root = new VBox(20);
         root.setAlignment(Pos.CENTER);
@@ -34,6 +39,11 @@ public class WelcomeView {
         singlePlayerButton.setOnAction(e -> startSinglePlayer(true));
         singlePlayerButton.setDisable(true);
 
+        difficultyBox = new javafx.scene.control.ComboBox<>();
+        difficultyBox.getItems().addAll("Simple Bot", "Advanced Bot", "Perfect Bot");
+        difficultyBox.getSelectionModel().selectFirst();
+        difficultyBox.setDisable(true);
+
         Button practiceButton = new Button("Practice Mode (No AI)");
         practiceButton.setOnAction(e -> startSinglePlayer(false));
         practiceButton.setDisable(true);
@@ -45,9 +55,15 @@ public class WelcomeView {
         submitNameButton.setOnAction(e -> {
             String name = nameField.getText().trim();
             if (!name.isEmpty()) {
-                com.squabbles.util.DatabaseManager.addPlayer(name);
                 welcomeLabel.setText("Welcome, " + name + "!");
+                DatabaseManager.runAsync(() -> DatabaseManager.addPlayer(name))
+                        .thenCompose(v -> DatabaseManager.getStatsAsync(name))
+                        .thenAccept(stats -> {
+                            if (stats != null && stats.getWins() + stats.getLosses() > 0)
+                                Platform.runLater(() -> welcomeLabel.setText("Welcome back, " + name + "! " + stats));
+                        });
                 singlePlayerButton.setDisable(false);
+                difficultyBox.setDisable(false);
                 practiceButton.setDisable(false);
                 multiplayerButton.setDisable(false);
                 nameField.setDisable(true);
@@ -55,7 +71,7 @@ public class WelcomeView {
             }
         });
 
-        root.getChildren().addAll(titleLabel, nameField, submitNameButton, welcomeLabel, singlePlayerButton, practiceButton, multiplayerButton);
+        root.getChildren().addAll(titleLabel, nameField, submitNameButton, welcomeLabel, singlePlayerButton, difficultyBox, practiceButton, multiplayerButton);
 
         return new Scene(root, 800, 600);
     }
@@ -65,8 +81,9 @@ public class WelcomeView {
         if (name.isEmpty()) {
             name = "Player";
         }
-        com.squabbles.util.DatabaseManager.addPlayer(name);
         final String playerName = name;
+        final int difficulty = difficultyBox.getSelectionModel().getSelectedIndex() + 1;
+        DatabaseManager.runAsync(() -> DatabaseManager.addPlayer(playerName));
 
         // Start a local server for 1 player (plus bot)
         int randomPort = 50000 + (int) (Math.random() * 10000);
@@ -84,16 +101,16 @@ public class WelcomeView {
                     try {
                         Thread.sleep(200); // Wait for server start
                         client.connect("localhost", randomPort, message -> {
-                            if (message.startsWith(com.squabbles.network.NetworkProtocol.MSG_WELCOME)) {
+                            if (message.is(com.squabbles.network.NetworkProtocol.MSG_WELCOME)) {
                                 // Request Bot Game if needed
                                 if (withBot) {
-                                    client.sendMessage(com.squabbles.network.NetworkProtocol.MSG_PLAY_BOT + " 1 " + playerName); // Difficulty 1
+                                    client.sendMessage(com.squabbles.network.NetworkProtocol.MSG_PLAY_BOT + " " + difficulty + " " + playerName);
                                 } else {
                                     client.sendMessage(com.squabbles.network.NetworkProtocol.MSG_PLAY_BOT + " 0 " + playerName); // 0 = Practice/No Bot
                                 }
-                            } else if (message.startsWith(com.squabbles.network.NetworkProtocol.MSG_START_GAME)) {
+                            } else if (message.is(com.squabbles.network.NetworkProtocol.MSG_START_GAME)) {
                                 javafx.application.Platform.runLater(() -> Main.setScene(new GameView(client, false, playerName).getScene()));
-                            } else if (message.startsWith(com.squabbles.network.NetworkProtocol.MSG_TURN_UPDATE)) {
+                            } else if (message.is(com.squabbles.network.NetworkProtocol.MSG_TURN_UPDATE)) {
                                 // Ensure turn updates are handled
                             }
                         });
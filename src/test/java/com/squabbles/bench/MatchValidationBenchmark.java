@@ -0,0 +1,79 @@
+package com.squabbles.bench;
+
+import com.squabbles.logic.DeckGenerator;
+import com.squabbles.model.Card;
+import com.squabbles.model.Icon;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the old stream-based match check with the icon bitmask check on
+ * random card pairs and icon guesses.
+ * Usage: MatchValidationBenchmark [iterations]
+ */
+public class MatchValidationBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        List<Card> deck = new DeckGenerator().generateDeck();
+
+        // Pre-drawn attempts so both variants see exactly the same work
+        Random random = new Random(42);
+        int n = 4096;
+        Card[] players = new Card[n];
+        Card[] centers = new Card[n];
+        int[] guesses = new int[n];
+        for (int i = 0; i < n; i++) {
+            players[i] = deck.get(random.nextInt(deck.size()));
+            centers[i] = deck.get(random.nextInt(deck.size()));
+            List<Icon> icons = players[i].getIcons();
+            guesses[i] = icons.get(random.nextInt(icons.size())).getId();
+        }
+
+        // Warm up both paths before timing
+        for (int round = 0; round < 3; round++) {
+            streams(players, centers, guesses, iterations / 5);
+            masks(players, centers, guesses, iterations / 5);
+        }
+
+        long start = System.nanoTime();
+        long streamHits = streams(players, centers, guesses, iterations);
+        long streamNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long maskHits = masks(players, centers, guesses, iterations);
+        long maskNs = System.nanoTime() - start;
+
+        if (streamHits != maskHits)
+            throw new IllegalStateException("Checks disagree: " + streamHits + " vs " + maskHits);
+        System.out.printf("streams: %.1f ns/check%n", (double) streamNs / iterations);
+        System.out.printf("bitmask: %.1f ns/check%n", (double) maskNs / iterations);
+        System.out.printf("speedup: %.1fx (%d matches in %d checks)%n",
+                (double) streamNs / maskNs, maskHits, iterations);
+    }
+
+    // What GameRoom.handleMatch used to do
+    private static long streams(Card[] players, Card[] centers, int[] guesses, int iterations) {
+        long hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            int k = i & (players.length - 1);
+            int iconId = guesses[k];
+            boolean onPlayerCard = players[k].getIcons().stream().anyMatch(icon -> icon.getId() == iconId);
+            boolean onCenterCard = centers[k].getIcons().stream().anyMatch(icon -> icon.getId() == iconId);
+            if (onPlayerCard && onCenterCard)
+                hits++;
+        }
+        return hits;
+    }
+
+    private static long masks(Card[] players, Card[] centers, int[] guesses, int iterations) {
+        long hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            int k = i & (players.length - 1);
+            if (players[k].hasIcon(guesses[k]) && centers[k].hasIcon(guesses[k]))
+                hits++;
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,85 @@
+package com.squabbles.bench;
+
+import com.squabbles.logic.CanonicalDeck;
+import com.squabbles.model.Card;
+import com.squabbles.network.RaceBoard;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Race room claims under contention: 1 to 8 threads each hold a card and keep
+ * claiming the current center with the right icon, so every claim is valid and
+ * only the compare-and-set decides who gets the card.
+ * Usage: RaceClaimBenchmark [millisPerRun]
+ */
+public class RaceClaimBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        CanonicalDeck deck = CanonicalDeck.get();
+
+        run(deck, 4, millis / 4); // Warm-up
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            run(deck, threads, millis);
+        }
+    }
+
+    private static void run(CanonicalDeck deck, int threads, long millis) throws InterruptedException {
+        List<Card> cards = deck.getCards();
+        RaceBoard board = new RaceBoard(deck, cards.get(0));
+        LongAdder claims = new LongAdder();
+        LongAdder wins = new LongAdder();
+        LongAdder stale = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+
+        Thread[] racers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            racers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Card mine = cards.get(random.nextInt(cards.size()));
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long localClaims = 0;
+                long localWins = 0;
+                long localStale = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    Card center = board.getCenter();
+                    if (center.getId() == mine.getId()) {
+                        mine = cards.get(random.nextInt(cards.size()));
+                        continue;
+                    }
+                    RaceBoard.Claim claim = board.claim(mine, deck.sharedIcon(mine.getId(), center.getId()));
+                    localClaims++;
+                    if (claim == RaceBoard.Claim.WON) {
+                        localWins++;
+                        mine = cards.get(random.nextInt(cards.size())); // The room deals a new card
+                    } else if (claim == RaceBoard.Claim.STALE) {
+                        localStale++;
+                    }
+                }
+                claims.add(localClaims);
+                wins.add(localWins);
+                stale.add(localStale);
+            });
+            racers[t].start();
+        }
+
+        deadline[0] = System.nanoTime() + millis * 1_000_000L;
+        start.countDown();
+        for (Thread racer : racers) {
+            racer.join();
+        }
+
+        double seconds = millis / 1000.0;
+        System.out.printf("%d threads: %,.0f claims/s, %,.0f wins/s, %.1f%% stale%n", threads,
+                claims.sum() / seconds, wins.sum() / seconds,
+                claims.sum() == 0 ? 0.0 : 100.0 * stale.sum() / claims.sum());
+    }
+}
@@ -0,0 +1,78 @@
+package com.squabbles.bench;
+
+import com.squabbles.util.DatabaseManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Stats writes per second, the old way (a new connection and statement per
+ * call, rollback journal) against the pooled WAL-mode DatabaseManager. Both
+ * run on fresh database files in a scratch directory.
+ * Usage: StatsWriteBenchmark [writes] [dir]
+ */
+public class StatsWriteBenchmark {
+    private static final int PLAYERS = 100;
+
+    public static void main(String[] args) throws SQLException {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        File dir = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+
+        File before = fresh(dir, "squabbles-bench-before.db");
+        String url = "jdbc:sqlite:" + before.getPath();
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            createTable(stmt);
+        }
+        for (int i = 0; i < PLAYERS; i++) {
+            perCall(url, "INSERT OR IGNORE INTO players(name) VALUES(?)", "p" + i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            perCall(url, "UPDATE players SET wins = wins + 1 WHERE name = ?", "p" + (i % PLAYERS));
+        }
+        report("connection per call", writes, System.nanoTime() - start);
+
+        // DatabaseManager reads its path once, so set it before first use
+        File after = fresh(dir, "squabbles-bench-after.db");
+        System.setProperty("squabbles.db.path", after.getPath());
+        DatabaseManager.initialize();
+        for (int i = 0; i < PLAYERS; i++) {
+            DatabaseManager.addPlayer("p" + i);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            DatabaseManager.updateStats("p" + (i % PLAYERS), true);
+        }
+        report("pooled WAL", writes, System.nanoTime() - start);
+        DatabaseManager.shutdown();
+    }
+
+    // What every DatabaseManager call used to do
+    private static void perCall(String url, String sql, String name) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS players (name TEXT PRIMARY KEY, "
+                + "wins INTEGER DEFAULT 0, losses INTEGER DEFAULT 0)");
+    }
+
+    private static File fresh(File dir, String name) {
+        for (String suffix : new String[] { "", "-wal", "-shm", "-journal" }) {
+            new File(dir, name + suffix).delete();
+        }
+        return new File(dir, name);
+    }
+
+    private static void report(String label, int writes, long nanos) {
+        System.out.printf("%-20s %,8.0f writes/s (%.3f ms each)%n", label,
+                writes / (nanos / 1e9), nanos / 1e6 / writes);
+    }
+}
@@ -0,0 +1,141 @@
+package com.squabbles.logic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LeaderboardTest {
+
+    @Test
+    void ranksByScoreHighestFirst() {
+        Leaderboard board = new Leaderboard();
+        board.put("low", 0, 2);   // -2
+        board.put("high", 4, 0);  // 12
+        board.put("mid", 1, 1);   // 2
+
+        assertEquals(1, board.get("high").rank);
+        assertEquals(2, board.get("mid").rank);
+        assertEquals(3, board.get("low").rank);
+        assertEquals(List.of("high", "mid", "low"), names(board.top(10)));
+        assertEquals(List.of("high", "mid"), names(board.top(2)));
+        assertEquals(3, board.size());
+    }
+
+    @Test
+    void equalScoresShareARank() {
+        Leaderboard board = new Leaderboard();
+        board.put("a", 1, 0);  // 3
+        board.put("b", 2, 3);  // 3
+        board.put("c", 5, 0);  // 15
+        board.put("d", 0, 0);  // 0
+
+        assertEquals(1, board.get("c").rank);
+        assertEquals(2, board.get("a").rank);
+        assertEquals(2, board.get("b").rank);
+        assertEquals(4, board.get("d").rank);
+
+        List<Leaderboard.Entry> top = board.top(4);
+        assertEquals(List.of("c", "a", "b", "d"), names(top)); // Ties in name order
+        assertEquals(List.of(1, 2, 2, 4), ranks(top));
+    }
+
+    @Test
+    void addMovesAPlayerAndPutReplaces() {
+        Leaderboard board = new Leaderboard();
+        board.put("a", 2, 0);
+        board.put("b", 1, 0);
+        assertEquals(2, board.get("b").rank);
+
+        board.add("b", 2, 1); // 3 wins, 1 loss = 8 > 6
+        Leaderboard.Entry b = board.get("b");
+        assertEquals(1, b.rank);
+        assertEquals(3, b.wins);
+        assertEquals(1, b.losses);
+        assertEquals(8, b.score);
+        assertEquals(2, board.get("a").rank);
+
+        board.put("b", 0, 0);
+        assertEquals(0, board.get("b").score);
+        assertEquals(2, board.get("b").rank);
+        assertEquals(2, board.size());
+
+        board.add("new", 0, 1);
+        assertEquals(3, board.get("new").rank);
+        assertEquals(3, board.size());
+    }
+
+    @Test
+    void unknownPlayerHasNoEntry() {
+        Leaderboard board = new Leaderboard();
+        assertNull(board.get("nobody"));
+        assertEquals(List.of(), board.top(5));
+        board.put("a", 1, 0);
+        assertNull(board.get("nobody"));
+    }
+
+    @Test
+    void matchesASortedScanAfterRandomUpdates() {
+        Random random = new Random(7);
+        Leaderboard board = new Leaderboard();
+        Map<String, int[]> totals = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            String name = "p" + random.nextInt(60);
+            int wins = random.nextInt(3);
+            int losses = random.nextInt(3);
+            if (random.nextInt(5) == 0) {
+                board.put(name, wins, losses);
+                totals.put(name, new int[] { wins, losses });
+            } else {
+                board.add(name, wins, losses);
+                totals.merge(name, new int[] { wins, losses },
+                        (old, more) -> new int[] { old[0] + more[0], old[1] + more[1] });
+            }
+        }
+
+        assertEquals(totals.size(), board.size());
+        for (Map.Entry<String, int[]> entry : totals.entrySet()) {
+            int score = Leaderboard.score(entry.getValue()[0], entry.getValue()[1]);
+            int above = 0;
+            for (int[] other : totals.values()) {
+                if (Leaderboard.score(other[0], other[1]) > score)
+                    above++;
+            }
+            Leaderboard.Entry got = board.get(entry.getKey());
+            assertEquals(above + 1, got.rank, entry.getKey());
+            assertEquals(score, got.score, entry.getKey());
+        }
+
+        List<Leaderboard.Entry> top = board.top(totals.size());
+        for (int i = 1; i < top.size(); i++) {
+            Leaderboard.Entry before = top.get(i - 1);
+            Leaderboard.Entry after = top.get(i);
+            boolean ordered = before.score > after.score
+                    || (before.score == after.score && before.name.compareTo(after.name) < 0);
+            assertEquals(true, ordered, before.name + " before " + after.name);
+            assertEquals(board.get(after.name).rank, after.rank, after.name);
+        }
+    }
+
+    private static List<String> names(List<Leaderboard.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (Leaderboard.Entry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    private static List<Integer> ranks(List<Leaderboard.Entry> entries) {
+        List<Integer> ranks = new ArrayList<>();
+        for (Leaderboard.Entry entry : entries) {
+            ranks.add(entry.rank);
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,88 @@
+package com.squabbles.logic;
+
+import com.squabbles.model.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RatingsTest {
+
+    @Test
+    void evenGameMovesHalfTheKFactor() {
+        Ratings ratings = new Ratings();
+        int delta = ratings.apply(new Ratings.Match("a", "b", 0));
+
+        assertEquals(Math.round(Ratings.K_FACTOR / 2.0), delta);
+        assertEquals(Player.DEFAULT_MMR + delta, ratings.get("a"));
+        assertEquals(Player.DEFAULT_MMR - delta, ratings.get("b"));
+        assertEquals(Player.DEFAULT_MMR, ratings.get("unrated"));
+    }
+
+    @Test
+    void upsetPaysMoreThanExpectedWin() {
+        assertTrue(Ratings.delta(1200, 1000) < Ratings.delta(1000, 1200));
+        assertEquals(1.0, Ratings.expected(1200, 1000) + Ratings.expected(1000, 1200), 1e-9);
+    }
+
+    @Test
+    void ratingPointsAreConserved() {
+        Ratings ratings = new Ratings();
+        List<Ratings.Match> history = randomHistory(new Random(1), 500, 20, 1);
+        for (Ratings.Match match : history) {
+            ratings.apply(match);
+        }
+        int total = 0;
+        for (int rating : ratings.snapshot().values()) {
+            total += rating;
+        }
+        assertEquals(Player.DEFAULT_MMR * ratings.size(), total);
+    }
+
+    @Test
+    void recomputeOfEmptyHistoryIsEmpty() {
+        assertEquals(0, Ratings.recompute(List.of()).size());
+    }
+
+    @Test
+    void parallelRecomputeMatchesSequentialReplay() {
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            // Several groups that only sometimes play across, so there are both
+            // independent components and ones merged late in the history
+            List<Ratings.Match> history = randomHistory(random, 3000, 200, 8);
+
+            Ratings sequential = new Ratings();
+            for (Ratings.Match match : history) {
+                sequential.apply(match);
+            }
+            Map<String, Integer> expected = sequential.snapshot();
+
+            assertEquals(expected, Ratings.recompute(history).snapshot(), "seed " + seed);
+        }
+    }
+
+    // Players split into groups that only play among themselves, except that groups 0 and 1
+    // meet in one game in 50 after the first half of the history
+    private static List<Ratings.Match> randomHistory(Random random, int games, int players, int groups) {
+        List<Ratings.Match> history = new ArrayList<>();
+        int perGroup = Math.max(2, players / groups);
+        for (int i = 0; i < games; i++) {
+            int group = random.nextInt(groups);
+            int other = group;
+            if (groups > 1 && group < 2 && i > games / 2 && random.nextInt(50) == 0)
+                other = 1 - group;
+            int a = group * perGroup + random.nextInt(perGroup);
+            int b = other * perGroup + random.nextInt(perGroup);
+            if (a == b)
+                continue;
+            history.add(new Ratings.Match("p" + a, "p" + b, i));
+        }
+        return history;
+    }
+}